@@ -0,0 +1,412 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Micro-benchmarks for the generate/render pipeline.
+ * <p>
+ * Each case is warmed up and then run repeatedly for a fixed time at 360, 10k, 100k and 1M points.
+ * The harness reports the average time per operation and the bytes allocated per operation on the
+ * benchmark thread, plus the number of collections that happened while measuring.
+ * </p>
+ * <p>
+ * Results can be written to a baseline file and compared against it later:
+ * </p>
+ * <pre>
+ * java -cp out PipelineBenchmark --write bench/baseline.txt
+ * java -cp out PipelineBenchmark --baseline bench/baseline.txt
+ * </pre>
+ * Other options: {@code --warmup <ms>}, {@code --time <ms>}, {@code --sizes 360,10000} and
+ * {@code --filter <case prefix>}.
+ *
+ * @author Adam Abusang
+ */
+public class PipelineBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {360, 10_000, 100_000, 1_000_000};
+
+    /**
+     * A slowdown larger than this fraction of the baseline is flagged as a regression.
+     */
+    private static final double REGRESSION_THRESHOLD = 0.10;
+
+    private static final int WIDTH = (int) Main.WIDTH;
+    private static final int HEIGHT = (int) Main.HEIGHT;
+
+    /**
+     * Keeps results alive so the JIT cannot remove the measured work.
+     */
+    private static volatile long sink;
+
+    /**
+     * One measured operation. The returned value is folded into {@link #sink}.
+     */
+    interface Operation {
+        long run(int iteration);
+    }
+
+    private static final class Case {
+        final String name;
+        final boolean sized;
+        final IntFunction<Operation> setup;
+
+        Case(String name, boolean sized, IntFunction<Operation> setup) {
+            this.name = name;
+            this.sized = sized;
+            this.setup = setup;
+        }
+    }
+
+    private static final class Result {
+        final String name;
+        final int numPoints;
+        final double nsPerOp;
+        final double bytesPerOp;
+        final long gcCount;
+
+        Result(String name, int numPoints, double nsPerOp, double bytesPerOp, long gcCount) {
+            this.name = name;
+            this.numPoints = numPoints;
+            this.nsPerOp = nsPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.gcCount = gcCount;
+        }
+
+        String key() {
+            return name + " " + numPoints;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        long warmupMs = 1000;
+        long timeMs = 2000;
+        int[] sizes = DEFAULT_SIZES;
+        String filter = "";
+        Path baseline = null;
+        Path output = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup":
+                    warmupMs = Long.parseLong(args[++i]);
+                    break;
+                case "--time":
+                    timeMs = Long.parseLong(args[++i]);
+                    break;
+                case "--sizes":
+                    String[] parts = args[++i].split(",");
+                    sizes = new int[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        sizes[p] = Integer.parseInt(parts[p].trim());
+                    }
+                    break;
+                case "--filter":
+                    filter = args[++i];
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--write":
+                    output = Paths.get(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        Map<String, Result> previous = baseline != null ? readBaseline(baseline) : new LinkedHashMap<>();
+        List<Result> results = new ArrayList<>();
+
+        System.out.printf(Locale.ROOT, "%-22s %9s %16s %14s %6s%s%n",
+                "case", "points", "ns/op", "B/op", "gc", previous.isEmpty() ? "" : "   vs baseline");
+
+        for (Case c : cases()) {
+            if (!c.name.startsWith(filter)) {
+                continue;
+            }
+            for (int numPoints : c.sized ? sizes : new int[] {0}) {
+                Result result;
+                try {
+                    result = measure(c, numPoints, warmupMs, timeMs);
+                } catch (RuntimeException | LinkageError e) {
+                    System.out.printf(Locale.ROOT, "%-22s %9d   failed: %s%n", c.name, numPoints, e);
+                    continue;
+                }
+                results.add(result);
+                System.out.printf(Locale.ROOT, "%-22s %9d %16.1f %14.1f %6d%s%n",
+                        result.name, result.numPoints, result.nsPerOp, result.bytesPerOp, result.gcCount,
+                        compare(result, previous.get(result.key())));
+            }
+        }
+
+        if (output != null) {
+            writeBaseline(output, results);
+            System.out.println("Baseline written to " + output);
+        }
+    }
+
+    private static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+
+        cases.add(new Case("points.legacy", true, n -> i -> PointOnCircle.generatePoints(Main.RADIUS, n).length));
+
+        cases.add(new Case("points.trig", true, n -> i -> new CircleTrig(n).getNumPoints()));
+
+        cases.add(new Case("points.geometry", true,
+                n -> i -> new ChordGeometry(Main.RADIUS, n, Main.OFFSET_W, Main.OFFSET_H).getNumPoints()));
+
+        cases.add(new Case("chords.map", true, n -> {
+            ChordGeometry geometry = ChordGeometry.forCircle(Main.RADIUS, n);
+            ChordBuffer buffer = new ChordBuffer();
+            return i -> geometry.map(2 + i * 0.01, buffer).getCount();
+        }));
+
+        cases.add(new Case("kernel.scalar", true, n -> kernel(new ScalarChordKernel(), n)));
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            cases.add(new Case("kernel.vector", true, n -> kernel(newVectorKernel(), n)));
+        }
+
+        cases.add(new Case("render.java2d", true, n -> {
+            ChordGeometry geometry = ChordGeometry.forCircle(Main.RADIUS, n);
+            ChordBuffer buffer = new ChordBuffer();
+            ChordRasterizer rasterizer = new ChordRasterizer(Color.WHITE, false);
+            BufferedImage image = ChordRasterizer.createImage(WIDTH, HEIGHT);
+            return i -> {
+                rasterizer.render(geometry.map(2 + i * 0.01, buffer), Color.RED, image);
+                return image.getRGB(WIDTH / 2, HEIGHT / 2);
+            };
+        }));
+
+        cases.add(new Case("render.density", true, n -> {
+            ChordGeometry geometry = ChordGeometry.forCircle(Main.RADIUS, n);
+            ChordBuffer buffer = new ChordBuffer();
+            DensityRenderer density = new DensityRenderer(WIDTH, HEIGHT, 1);
+            return i -> {
+                density.accumulate(geometry.map(2 + i * 0.01, buffer));
+                int[] pixels = density.toneMap(Color.RED, Color.WHITE, DensityRenderer.ToneMap.LOG, 0);
+                return pixels[HEIGHT / 2 * WIDTH + WIDTH / 2];
+            };
+        }));
+
+        // A whole document per operation, written to a stream that only counts the bytes
+        cases.add(new Case("export.svg", true, n -> vectorExport(n, false)));
+        cases.add(new Case("export.pdf", true, n -> vectorExport(n, true)));
+
+        if (javaFxAvailable()) {
+            cases.add(new Case("render.fx-nodes", true, n -> {
+                Visualization visualization = new Visualization(2, Main.RADIUS);
+                return i -> {
+                    visualization.setTimesTableNum(2 + i * 0.01);
+                    return visualization.generateLines(n, javafx.scene.paint.Color.RED).getChildren().size();
+                };
+            }));
+
+            // Packing the quads and copying them into the mesh; drawing it is up to the graphics card
+            cases.add(new Case("render.fx-mesh", true, n -> {
+                ChordGeometry geometry = ChordGeometry.forCircle(Main.RADIUS, n);
+                ChordBuffer buffer = new ChordBuffer();
+                ChordMesh mesh = new ChordMesh();
+                return i -> {
+                    mesh.update(geometry.map(2 + i * 0.01, buffer), javafx.scene.paint.Color.RED);
+                    return buffer.getCount();
+                };
+            }));
+
+            // The same number of chords as the single-circle cases, split over a stack of eight layers
+            cases.add(new Case("layers.map", true, n -> {
+                Layer[] stack = new Layer[8];
+                for (int l = 0; l < stack.length; l++) {
+                    stack[l] = new Layer(2 + l * 0.5, n / stack.length, Main.RADIUS - l * 20,
+                            javafx.scene.paint.Color.RED, 0.01);
+                }
+                LayerBatch batch = new LayerBatch(Main.OFFSET_W, Main.OFFSET_H);
+                Layer[][] frames = {stack, Layer.advanceAll(stack)};
+                return i -> batch.map(frames[i & 1]).getCount();
+            }));
+        }
+
+        cases.add(new Case("pattern.analyze", true, n -> {
+            PatternAnalysis.Workspace workspace = new PatternAnalysis.Workspace();
+            return i -> PatternAnalysis.analyze(FixedTtn.fromDouble(2 + i * 0.01), n, workspace).getCycleCount();
+        }));
+
+        cases.add(new Case("pattern.identify", false,
+                n -> i -> PresetPatterns.identifyPattern(2 + (i % 100) * 0.5).length()));
+        // A library of a few thousand saved presets, a step of 0.025 apart so about half the lookups hit
+        cases.add(new Case("pattern.library", false, n -> {
+            PresetLibrary library = new PresetLibrary(presetFile(4096));
+            return i -> library.identify(2 + (i % 4096) * 0.0125).length();
+        }));
+
+        return cases;
+    }
+
+    private static Path presetFile(int count) {
+        try {
+            Path file = Files.createTempFile("presets", ".tsv");
+            file.toFile().deleteOnExit();
+            List<String> lines = new ArrayList<>();
+            for (int p = 0; p < count; p++) {
+                lines.add((2 + p * 0.025) + "\t360\tPreset " + p + "\t");
+            }
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Operation vectorExport(int n, boolean pdf) {
+        ChordGeometry geometry = ChordGeometry.forCircle(Main.RADIUS, n);
+        ChordBuffer buffer = new ChordBuffer();
+        long[] bytes = new long[1];
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                bytes[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                bytes[0] += len;
+            }
+        };
+        return i -> {
+            geometry.map(2 + i * 0.01, buffer);
+            bytes[0] = 0;
+            try (VectorWriter writer = pdf ? new PdfWriter(counter, WIDTH, HEIGHT, Color.WHITE)
+                    : new SvgWriter(counter, WIDTH, HEIGHT, Color.WHITE)) {
+                writer.writeChords(buffer, Color.RED, 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes[0];
+        };
+    }
+
+    /**
+     * Maps every point and gathers the chord endpoints with one kernel, bypassing the selection in
+     * {@link ChordKernel#get()} so both kernels can be compared in one run.
+     */
+    private static Operation kernel(ChordKernel kernel, int n) {
+        ChordGeometry geometry = ChordGeometry.forCircle(Main.RADIUS, n);
+        int[] from = new int[n];
+        int[] to = new int[n];
+        float[] x0 = new float[n], y0 = new float[n], x1 = new float[n], y1 = new float[n];
+        return i -> {
+            long reduced = Math.floorMod(FixedTtn.fromDouble(2 + i * 0.01), n * FixedTtn.SCALE);
+            kernel.mapTargets((int) (reduced / FixedTtn.SCALE), (int) (reduced % FixedTtn.SCALE), n,
+                    1, n - 1, from, to);
+            kernel.gatherEndpoints(geometry.xsFloat(), geometry.ysFloat(), from, to, n - 1, x0, y0, x1, y1);
+            return to[n / 2];
+        };
+    }
+
+    private static ChordKernel newVectorKernel() {
+        try {
+            return (ChordKernel) Class.forName("VectorChordKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean javaFxAvailable() {
+        try {
+            Class.forName("javafx.scene.shape.Line", false, PipelineBenchmark.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static Result measure(Case c, int numPoints, long warmupMs, long timeMs) {
+        Operation op = c.setup.apply(numPoints);
+
+        int iteration = 0;
+        long warmupEnd = System.nanoTime() + warmupMs * 1_000_000;
+        do {
+            sink += op.run(iteration++);
+        } while (System.nanoTime() < warmupEnd);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long gcBefore = gcCount();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+
+        long ops = 0;
+        long start = System.nanoTime();
+        long end = start + timeMs * 1_000_000;
+        long now;
+        do {
+            sink += op.run(iteration++);
+            ops++;
+            now = System.nanoTime();
+        } while (now < end);
+
+        long bytes = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        return new Result(c.name, numPoints, (double) (now - start) / ops, (double) bytes / ops,
+                gcCount() - gcBefore);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static String compare(Result result, Result base) {
+        if (base == null) {
+            return "";
+        }
+        double change = (result.nsPerOp - base.nsPerOp) / base.nsPerOp;
+        return String.format(Locale.ROOT, "   %+7.1f%%%s", change * 100,
+                change > REGRESSION_THRESHOLD ? "  REGRESSION" : "");
+    }
+
+    private static Map<String, Result> readBaseline(Path file) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] f = line.trim().split("\\s+");
+            Result r = new Result(f[0], Integer.parseInt(f[1]), Double.parseDouble(f[2]),
+                    Double.parseDouble(f[3]), Long.parseLong(f[4]));
+            results.put(r.key(), r);
+        }
+        return results;
+    }
+
+    private static void writeBaseline(Path file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.printf(Locale.ROOT, "# %s %s, %d cores%n", System.getProperty("java.vm.name"),
+                    System.getProperty("java.version"), Runtime.getRuntime().availableProcessors());
+            out.println("# case points ns/op B/op gc");
+            for (Result r : results) {
+                out.printf(Locale.ROOT, "%s %d %.1f %.1f %d%n",
+                        r.name, r.numPoints, r.nsPerOp, r.bytesPerOp, r.gcCount);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for a running {@link RenderServer}.
+ * <p>
+ * A number of client threads request frames as fast as they can for a fixed time. Each request picks
+ * one of {@code --distinct} times table numbers at random, so the mix of cache hits and renders can be
+ * tuned; with {@code --etag} every client remembers the ETag of each frame and sends it back in
+ * {@code If-None-Match}, like a browser would. The test reports throughput, the status codes seen and
+ * latency percentiles:
+ * </p>
+ * <pre>
+ * java -cp out RenderServer --port 8080 &amp;
+ * java -cp out ServerLoadTest --url "http://localhost:8080/render?points=2000" --concurrency 32 --distinct 500
+ * </pre>
+ *
+ * @author Adam Abusang
+ */
+public class ServerLoadTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        String url = "http://localhost:8080/render?points=360";
+        int concurrency = 16;
+        long durationMs = 10_000;
+        int distinct = 100;
+        boolean etag = false;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(args[++i]);
+                    break;
+                case "--duration":
+                    durationMs = Long.parseLong(args[++i]);
+                    break;
+                case "--distinct":
+                    distinct = Integer.parseInt(args[++i]);
+                    break;
+                case "--etag":
+                    etag = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String base = url + (url.contains("?") ? "&" : "?") + "ttn=";
+        long deadline = System.nanoTime() + durationMs * 1_000_000;
+        Map<Integer, AtomicLong> statuses = new TreeMap<>();
+        AtomicLong bytes = new AtomicLong();
+        long[][] latencies = new long[concurrency][];
+        int[] counts = new int[concurrency];
+
+        Thread[] clients = new Thread[concurrency];
+        for (int t = 0; t < concurrency; t++) {
+            int id = t;
+            int frames = distinct;
+            boolean sendEtag = etag;
+            clients[t] = new Thread(() -> {
+                Random random = new Random(id);
+                String[] etags = new String[frames];
+                long[] samples = new long[1024];
+                int n = 0;
+                while (System.nanoTime() < deadline) {
+                    int frame = random.nextInt(frames);
+                    HttpRequest.Builder request = HttpRequest.newBuilder(
+                            URI.create(base + (2 + frame * 0.01))).timeout(Duration.ofSeconds(30));
+                    if (sendEtag && etags[frame] != null) {
+                        request.header("If-None-Match", etags[frame]);
+                    }
+                    long start = System.nanoTime();
+                    int status;
+                    try {
+                        HttpResponse<byte[]> response = client.send(request.build(),
+                                HttpResponse.BodyHandlers.ofByteArray());
+                        status = response.statusCode();
+                        bytes.addAndGet(response.body().length);
+                        response.headers().firstValue("ETag").ifPresent(tag -> etags[frame] = tag);
+                    } catch (IOException e) {
+                        status = -1;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (n == samples.length) {
+                        samples = Arrays.copyOf(samples, n * 2);
+                    }
+                    samples[n++] = System.nanoTime() - start;
+                    synchronized (statuses) {
+                        statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+                    }
+                }
+                latencies[id] = samples;
+                counts[id] = n;
+            }, "load-client-" + t);
+            clients[t].start();
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : clients) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        for (int t = 0, off = 0; t < concurrency; t++) {
+            System.arraycopy(latencies[t], 0, all, off, counts[t]);
+            off += counts[t];
+        }
+        Arrays.sort(all);
+
+        System.out.printf(Locale.ROOT, "%d requests in %.1fs: %.0f requests/s, %.1f MB/s, %d clients%n",
+                total, seconds, total / seconds, bytes.get() / seconds / (1024 * 1024), concurrency);
+        System.out.println("status " + statuses + (statuses.containsKey(-1) ? " (-1: connection failed)" : ""));
+        System.out.printf(Locale.ROOT, "latency ms: p50 %.2f, p95 %.2f, p99 %.2f, max %.2f%n",
+                percentile(all, 0.50), percentile(all, 0.95), percentile(all, 0.99), percentile(all, 1.0));
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Fixed-timestep simulation clock for the animation.
+ * <p>
+ * The times table number advances by one step per tick, and ticks happen at a fixed rate set by the
+ * delay slider, independent of how long each frame takes to render. When rendering falls behind,
+ * several ticks elapse between two rendered frames: the animation skips ahead instead of slowing
+ * down, and the skipped frames are counted as dropped.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class AnimationClock {
+
+    /**
+     * Shortest tick, used when the delay is zero: one step per frame of a 60 Hz display.
+     */
+    public static final double MIN_TICK_SECONDS = 1.0 / 60;
+
+    /**
+     * Longest stretch of time caught up at once, so that a stall (a modal dialog, a suspended
+     * laptop) does not make the animation leap forward.
+     */
+    private static final double MAX_CATCH_UP_SECONDS = 1.0;
+
+    /**
+     * Fraction of a tick by which a frame may arrive early and still count as a tick. Absorbs
+     * vsync jitter, which would otherwise alternate between zero and two ticks per frame.
+     */
+    private static final double JITTER_TOLERANCE = 0.25;
+
+    private long lastNanos = -1;
+    private double accumulated;
+    private long droppedFrames;
+
+    /**
+     * Restarts the clock, for example when the animation is resumed, so that time spent paused is
+     * not caught up. The next call to {@link #advance} produces a tick immediately.
+     */
+    public void reset() {
+        lastNanos = -1;
+        accumulated = 0;
+    }
+
+    /**
+     * Advances the clock to the time of the current frame.
+     *
+     * @param nowNanos the frame timestamp in nanoseconds, as passed to
+     *                 {@link javafx.animation.AnimationTimer#handle(long)}
+     * @param tickSeconds the simulation time step in seconds
+     * @return the number of ticks that elapsed since the previous frame; more than one means
+     *         frames were dropped
+     */
+    public int advance(long nowNanos, double tickSeconds) {
+        double tick = Math.max(tickSeconds, MIN_TICK_SECONDS);
+        if (lastNanos < 0) {
+            lastNanos = nowNanos;
+            accumulated = 0;
+            return 1;
+        }
+
+        accumulated += Math.min((nowNanos - lastNanos) / 1e9, MAX_CATCH_UP_SECONDS);
+        lastNanos = nowNanos;
+
+        int ticks = (int) (accumulated / tick + JITTER_TOLERANCE);
+        accumulated -= ticks * tick;
+        if (ticks > 1) {
+            droppedFrames += ticks - 1;
+        }
+        return ticks;
+    }
+
+    /**
+     * Returns the total number of frames skipped because rendering could not keep up.
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
@@ -0,0 +1,262 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records an animation to a file through a bounded render → encode pipeline.
+ * <p>
+ * The animation only hands over the parameters of each frame with {@link #offer}, which never
+ * blocks: if the pipeline falls too far behind the frame is dropped and counted instead. A render
+ * thread rasterizes the frames into a small fixed pool of images, and an encoder thread streams them
+ * into a {@link FrameEncoder} and returns the images to the pool. All queues are bounded, so memory
+ * stays flat however long the recording runs.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class AnimationRecorder implements Closeable {
+
+    /**
+     * Frames waiting to be rendered. The entries are tiny, so the queue can absorb long stalls of
+     * the encoder before frames are dropped.
+     */
+    private static final int REQUEST_CAPACITY = 512;
+
+    /**
+     * Images shared by the render and encoder threads.
+     */
+    private static final int IMAGE_POOL_SIZE = 3;
+
+    private static final Request END = new Request(0, 0, null, null, null, null);
+
+    /**
+     * The parameters of one frame.
+     */
+    private static final class Request {
+        final double ttn;
+        final int numPoints;
+        final Color lineColor;
+        final Color background;
+        final Color circleColor;
+        final Layer[] layers;
+
+        Request(double ttn, int numPoints, Color lineColor, Color background, Color circleColor, Layer[] layers) {
+            this.ttn = ttn;
+            this.numPoints = numPoints;
+            this.lineColor = lineColor;
+            this.background = background;
+            this.circleColor = circleColor;
+            this.layers = layers;
+        }
+    }
+
+    private final FrameEncoder encoder;
+    private final int width, height;
+    private final double radius;
+
+    private final BlockingQueue<Request> requests = new ArrayBlockingQueue<>(REQUEST_CAPACITY);
+    private final BlockingQueue<BufferedImage> free = new ArrayBlockingQueue<>(IMAGE_POOL_SIZE);
+    private final BlockingQueue<BufferedImage> rendered = new ArrayBlockingQueue<>(IMAGE_POOL_SIZE + 1);
+    private final BufferedImage endOfStream = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+    private final Thread renderThread;
+    private final Thread encoderThread;
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * Starts a recording.
+     *
+     * @param encoder the encoder the frames are written to; closed together with the recorder
+     * @param width the width of every frame
+     * @param height the height of every frame
+     * @param radius the radius of the circle, which is centred in the frame
+     */
+    public AnimationRecorder(FrameEncoder encoder, int width, int height, double radius) {
+        this.encoder = encoder;
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+
+        for (int i = 0; i < IMAGE_POOL_SIZE; i++) {
+            free.add(ChordRasterizer.createImage(width, height));
+        }
+
+        renderThread = new Thread(this::renderLoop, "recorder-render");
+        encoderThread = new Thread(this::encodeLoop, "recorder-encode");
+        renderThread.setDaemon(true);
+        encoderThread.setDaemon(true);
+        renderThread.start();
+        encoderThread.start();
+    }
+
+    /**
+     * Queues a frame for recording without blocking.
+     *
+     * @param ttn the times table number of the frame
+     * @param numPoints the number of points on the circle
+     * @param lineColor the color of the chords
+     * @param background the background color
+     * @param circleColor the color of the circle outline, or {@code null} to leave it out
+     * @param layers the layers stacked on top of the chords, bottom first; must not be modified afterwards
+     * @return {@code true} if the frame was queued, {@code false} if it was dropped
+     */
+    public boolean offer(double ttn, int numPoints, Color lineColor, Color background, Color circleColor,
+            Layer[] layers) {
+        if (closed || failure != null || numPoints <= 0) {
+            return false;
+        }
+        if (requests.offer(new Request(ttn, numPoints, lineColor, background, circleColor, layers))) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Returns the number of frames written to the file so far.
+     *
+     * @return the recorded frame count
+     */
+    public long getRecordedFrames() {
+        return recorded.get();
+    }
+
+    /**
+     * Returns the number of frames dropped because the pipeline could not keep up.
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+
+    private void renderLoop() {
+        ChordBuffer chords = new ChordBuffer();
+        ChordRasterizer rasterizer = new ChordRasterizer(null, true);
+        LayerBatch layers = new LayerBatch(width / 2.0, height / 2.0);
+        try {
+            while (true) {
+                Request request = requests.take();
+                if (request == END) {
+                    return;
+                }
+                if (failure != null) {
+                    continue;
+                }
+
+                BufferedImage image = free.take();
+                try {
+                    drawFrame(request, rasterizer, chords, layers, image);
+                } catch (RuntimeException | Error e) {
+                    // Such as running out of memory at a huge point count; the remaining frames are
+                    // skipped and close() reports the failure
+                    failure = new IOException("Failed to render a frame: " + e, e);
+                    free.put(image);
+                    continue;
+                }
+                rendered.put(image);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // However the loop ends, end the stream so the encoder thread and close() finish. The
+            // queue has room for every pooled image and the marker, so this never has to wait
+            rendered.offer(endOfStream);
+        }
+    }
+
+    private void drawFrame(Request request, ChordRasterizer rasterizer, ChordBuffer chords, LayerBatch layers,
+            BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setBackground(request.background);
+            g.clearRect(0, 0, width, height);
+            if (request.circleColor != null) {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                g.setColor(request.circleColor);
+                g.setStroke(new BasicStroke(2f));
+                g.draw(new Ellipse2D.Double(width / 2.0 - radius, height / 2.0 - radius, 2 * radius, 2 * radius));
+            }
+            ChordGeometry geometry = ChordGeometry.forCircle(radius, request.numPoints, width / 2.0, height / 2.0);
+            rasterizer.draw(geometry.map(request.ttn, chords), request.lineColor, g);
+            rasterizer.drawLayers(layers.map(request.layers), g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private void encodeLoop() {
+        try {
+            while (true) {
+                BufferedImage image = rendered.take();
+                if (image == endOfStream) {
+                    return;
+                }
+                try {
+                    if (failure == null) {
+                        encoder.encode(image);
+                        recorded.incrementAndGet();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException | Error e) {
+                    // Keep draining, or the render thread would wait for a free image forever
+                    failure = new IOException("Failed to encode a frame: " + e, e);
+                } finally {
+                    free.put(image);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting frames, waits until every queued frame is written and finishes the file.
+     * This can take a while, so it should not be called on the JavaFX Application Thread.
+     *
+     * @throws IOException if encoding any frame or finishing the file failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // A render thread that died would leave a full queue behind; then the end marker it
+            // posted on the way out is all the encoder needs
+            while (!requests.offer(END, 100, TimeUnit.MILLISECONDS) && renderThread.isAlive()) {
+                // Wait for the render thread to make room
+            }
+            encoderThread.join();
+        } catch (InterruptedException e) {
+            renderThread.interrupt();
+            encoderThread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            encoder.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
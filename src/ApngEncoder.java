@@ -0,0 +1,177 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Pure-Java animated PNG (APNG) encoder.
+ * <p>
+ * Each frame is compressed into a reusable buffer and written out immediately. The frame count in
+ * the {@code acTL} chunk is unknown until the end, so it is patched in place when the encoder is
+ * closed.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class ApngEncoder implements FrameEncoder {
+
+    /**
+     * Largest amount of image data put into a single IDAT/fdAT chunk.
+     */
+    private static final int MAX_CHUNK = 1 << 20;
+
+    private final File file;
+    private final int width, height;
+    private final int delayNum, delayDen;
+    private final CountingOutputStream out;
+    private final long acTLPosition;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final byte[] line;
+    private int[] scratch;
+    private byte[] chunk = new byte[0];
+    private int frames;
+    private int sequence;
+
+    /**
+     * Creates the file and writes the PNG header.
+     *
+     * @param file the file to write
+     * @param width the width of every frame
+     * @param height the height of every frame
+     * @param fps the playback rate in frames per second
+     * @throws IOException if the file cannot be created
+     */
+    public ApngEncoder(File file, int width, int height, double fps) throws IOException {
+        this.file = file;
+        this.width = width;
+        this.height = height;
+        this.delayNum = 1000;
+        this.delayDen = (int) Math.max(1, Math.min(65535, Math.round(fps * 1000)));
+        this.line = new byte[1 + 4 * width];
+
+        out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.write(PngChunks.SIGNATURE);
+        PngChunks.write(out, "IHDR", PngChunks.header(width, height, PngChunks.COLOR_TYPE_RGBA));
+        acTLPosition = out.count;
+        PngChunks.write(out, "acTL", new byte[8]);
+    }
+
+    @Override
+    public void encode(BufferedImage frame) throws IOException {
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IOException("Frame size " + frame.getWidth() + "x" + frame.getHeight()
+                    + " does not match " + width + "x" + height);
+        }
+
+        byte[] fcTL = new byte[26];
+        PngChunks.putInt(fcTL, 0, sequence++);
+        PngChunks.putInt(fcTL, 4, width);
+        PngChunks.putInt(fcTL, 8, height);
+        PngChunks.putShort(fcTL, 20, delayNum);
+        PngChunks.putShort(fcTL, 22, delayDen);
+        PngChunks.write(out, "fcTL", fcTL);
+
+        compress(frame);
+        byte[] data = compressed.toByteArray();
+        for (int off = 0; off < data.length; off += MAX_CHUNK) {
+            int len = Math.min(MAX_CHUNK, data.length - off);
+            if (frames == 0) {
+                PngChunks.write(out, "IDAT", data, off, len);
+            } else {
+                if (chunk.length < len + 4) {
+                    chunk = new byte[len + 4];
+                }
+                PngChunks.putInt(chunk, 0, sequence++);
+                System.arraycopy(data, off, chunk, 4, len);
+                PngChunks.write(out, "fdAT", chunk, 0, len + 4);
+            }
+        }
+        frames++;
+    }
+
+    private void compress(BufferedImage frame) throws IOException {
+        int[] argb = PngChunks.backingPixels(frame);
+        if (argb == null) {
+            if (scratch == null) {
+                scratch = new int[width * height];
+            }
+            argb = frame.getRGB(0, 0, width, height, scratch, 0, width);
+        }
+
+        compressed.reset();
+        deflater.reset();
+        DeflaterOutputStream zip = new DeflaterOutputStream(compressed, deflater, 1 << 16);
+        for (int y = 0; y < height; y++) {
+            PngChunks.filterRow(argb, y * width, width, line);
+            zip.write(line);
+        }
+        zip.finish();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (frames == 0) {
+                // A PNG needs image data and an APNG at least one frame; stand in a transparent one
+                encode(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+            }
+            PngChunks.write(out, "IEND", new byte[0]);
+        } finally {
+            out.close();
+            deflater.end();
+        }
+
+        // Patch the number of frames into the acTL chunk now that it is known
+        byte[] acTL = new byte[8];
+        PngChunks.putInt(acTL, 0, frames);
+        byte[] type = "acTL".getBytes(StandardCharsets.US_ASCII);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(acTLPosition + 8);
+            raf.write(acTL);
+            raf.writeInt((int) PngChunks.crc(type, acTL, 0, acTL.length));
+        }
+    }
+
+    /**
+     * Keeps track of the number of bytes written, to know where chunks start in the file.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+        private long count;
+
+        CountingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
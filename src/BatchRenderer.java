@@ -0,0 +1,371 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless command-line renderer for sweeps of times table numbers.
+ * <p>
+ * Renders one PNG per frame with {@link ChordRasterizer}, without a JavaFX stage, so it can run on a
+ * machine without a display. Frames are rendered and encoded in parallel by a {@link SweepRenderer}.
+ * With {@code --video} the sweep is written to a single animated file through a {@link FrameEncoder}
+ * instead. Example:
+ * </p>
+ * <pre>
+ * java -cp out BatchRenderer --from 0 --to 100 --step 0.01 --points 360 \
+ *         --width 1920 --height 1080 --color #ff0000 --out frames
+ * </pre>
+ *
+ * @author Adam Abusang
+ */
+public class BatchRenderer {
+
+    private double from = 2;
+    private double to = 2;
+    private double step = 0.1;
+    private int numPoints = 360;
+    private int width = (int) Main.WIDTH;
+    private int height = (int) Main.HEIGHT;
+    private double radius = -1;
+    private Color color = Color.RED;
+    private Color background = Color.WHITE;
+    private boolean antialias = true;
+    private File outputDir = new File("frames");
+    private String prefix = "frame_";
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int maxInFlight = -1;
+    private File video;
+    private double fps = 30;
+    private int tileSize;
+    private DensityRenderer.ToneMap toneMap;
+    private double gamma = DensityRenderer.DEFAULT_GAMMA;
+    private String vectorFormat;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        BatchRenderer renderer = new BatchRenderer();
+        try {
+            renderer.parseArgs(args);
+            renderer.render();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Failed to write frames: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: BatchRenderer [options]");
+        System.err.println("  --from <ttn>        first times table number (default 2)");
+        System.err.println("  --to <ttn>          last times table number (default: same as --from)");
+        System.err.println("  --step <ttn>        increment between frames (default 0.1)");
+        System.err.println("  --points <n>        number of points on the circle (default 360)");
+        System.err.println("  --width <px>        image width (default 1400)");
+        System.err.println("  --height <px>       image height (default 900)");
+        System.err.println("  --radius <px>       circle radius (default: a third of the smaller side)");
+        System.err.println("  --color <#rrggbb>   line color (default #ff0000)");
+        System.err.println("  --background <#rrggbb|none>  background color (default #ffffff)");
+        System.err.println("  --no-antialias      draw aliased lines");
+        System.err.println("  --density <linear|gamma|log>  draw additive line density with this tone curve");
+        System.err.println("  --gamma <g>         gamma of --density gamma (default 2.2)");
+        System.err.println("  --out <dir>         output directory (default ./frames)");
+        System.err.println("  --prefix <name>     file name prefix (default frame_)");
+        System.err.println("  --threads <n>       worker threads (default: number of cores)");
+        System.err.println("  --in-flight <n>     frames held in memory at once (default: 2 per thread)");
+        System.err.println("  --video <file>      write one animated .gif, .png (APNG) or .mp4 (needs ffmpeg)");
+        System.err.println("  --fps <rate>        playback rate of --video (default 30)");
+        System.err.println("  --vector <svg|pdf>  write every frame as a vector image instead of a PNG");
+        System.err.println("  --tile <px>         render each frame in tiles of this size, for images too large");
+        System.err.println("                      for memory (e.g. --width 32768 --height 32768 --tile 256)");
+    }
+
+    private void parseArgs(String[] args) {
+        boolean toSet = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--help")) {
+                printUsage();
+                System.exit(0);
+            }
+            if (option.equals("--no-antialias")) {
+                antialias = false;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--from":
+                        from = Double.parseDouble(value);
+                        break;
+                    case "--to":
+                        to = Double.parseDouble(value);
+                        toSet = true;
+                        break;
+                    case "--step":
+                        step = Double.parseDouble(value);
+                        break;
+                    case "--points":
+                        numPoints = Integer.parseInt(value);
+                        break;
+                    case "--width":
+                        width = Integer.parseInt(value);
+                        break;
+                    case "--height":
+                        height = Integer.parseInt(value);
+                        break;
+                    case "--radius":
+                        radius = Double.parseDouble(value);
+                        break;
+                    case "--color":
+                        color = Color.decode(value);
+                        break;
+                    case "--background":
+                        background = value.equalsIgnoreCase("none") ? null : Color.decode(value);
+                        break;
+                    case "--out":
+                        outputDir = new File(value);
+                        break;
+                    case "--prefix":
+                        prefix = value;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--in-flight":
+                        maxInFlight = Integer.parseInt(value);
+                        break;
+                    case "--video":
+                        video = new File(value);
+                        break;
+                    case "--fps":
+                        fps = Double.parseDouble(value);
+                        break;
+                    case "--density":
+                        toneMap = DensityRenderer.ToneMap.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "--gamma":
+                        gamma = Double.parseDouble(value);
+                        break;
+                    case "--tile":
+                        tileSize = Integer.parseInt(value);
+                        break;
+                    case "--vector":
+                        vectorFormat = value.toLowerCase(Locale.ROOT);
+                        if (!vectorFormat.equals("svg") && !vectorFormat.equals("pdf")) {
+                            throw new IllegalArgumentException("--vector must be svg or pdf");
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+
+        if (!toSet) {
+            to = from;
+        }
+        if (FixedTtn.fromDouble(step) <= 0) {
+            throw new IllegalArgumentException("--step must be at least 0.000001");
+        }
+        if (to < from) {
+            throw new IllegalArgumentException("--to must not be smaller than --from");
+        }
+        if (frameSpan() >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("--from, --to and --step give more than " + Integer.MAX_VALUE
+                    + " frames");
+        }
+        if (numPoints <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("--points, --width and --height must be positive");
+        }
+        if (radius < 0) {
+            radius = Math.min(width, height) * Main.RADIUS / Main.HEIGHT;
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+        if (tileSize < 0) {
+            throw new IllegalArgumentException("--tile must be positive");
+        }
+        if (tileSize > 0 && video != null) {
+            throw new IllegalArgumentException("--tile cannot be combined with --video");
+        }
+        if (tileSize > 0 && toneMap != null) {
+            throw new IllegalArgumentException("--tile cannot be combined with --density");
+        }
+        if (vectorFormat != null && (video != null || tileSize > 0 || toneMap != null)) {
+            throw new IllegalArgumentException("--vector cannot be combined with --video, --tile or --density");
+        }
+        if (gamma <= 0) {
+            throw new IllegalArgumentException("--gamma must be positive");
+        }
+        if (fps <= 0) {
+            throw new IllegalArgumentException("--fps must be positive");
+        }
+        if (maxInFlight < 0) {
+            maxInFlight = 2 * threads;
+        } else if (maxInFlight == 0) {
+            throw new IllegalArgumentException("--in-flight must be positive");
+        }
+    }
+
+    /**
+     * Returns the number of frames in the sweep, including both ends of the range.
+     *
+     * @return the frame count
+     */
+    private int frameCount() {
+        return (int) frameSpan() + 1;
+    }
+
+    /**
+     * Returns the number of steps from the first frame to the last, checked against the frame count
+     * limit while the options are parsed.
+     */
+    private long frameSpan() {
+        // Exact in fixed point, so e.g. 0 to 1 in steps of 0.1 includes the final frame
+        return (FixedTtn.fromDouble(to) - FixedTtn.fromDouble(from)) / FixedTtn.fromDouble(step);
+    }
+
+    /**
+     * Returns the times table number of a frame. Computed in fixed point from the frame index, so
+     * every frame of a sweep is exactly reproducible whatever the frame count or machine.
+     *
+     * @param frame the frame index
+     * @return the times table number of the frame
+     */
+    private double ttnOf(int frame) {
+        return FixedTtn.toDouble(FixedTtn.fromDouble(from) + frame * FixedTtn.fromDouble(step));
+    }
+
+    private void render() throws IOException, InterruptedException {
+        if (video != null) {
+            renderVideo();
+            return;
+        }
+        if (tileSize > 0) {
+            renderTiled();
+            return;
+        }
+        if (vectorFormat != null) {
+            renderVector();
+            return;
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + outputDir);
+        }
+
+        int frames = frameCount();
+        String nameFormat = "%s%0" + Math.max(5, String.valueOf(frames - 1).length()) + "d.png";
+
+        ChordGeometry geometry = ChordGeometry.forCircle(radius, numPoints, width / 2.0, height / 2.0);
+        SweepRenderer sweep = new SweepRenderer(geometry, color, background, antialias,
+                width, height, threads, maxInFlight);
+        sweep.setDensity(toneMap, gamma);
+
+        long start = System.nanoTime();
+        sweep.render(frames, this::ttnOf,
+                (frame, ttn, image) -> {
+                    ByteArrayOutputStream png = new ByteArrayOutputStream();
+                    if (!ImageIO.write(image, "png", png)) {
+                        throw new IOException("No PNG writer available");
+                    }
+                    return png.toByteArray();
+                },
+                (frame, ttn, png) -> Files.write(
+                        new File(outputDir, String.format(Locale.ROOT, nameFormat, prefix, frame)).toPath(), png));
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Rendered %d frames to %s in %.2fs (%.1f frames/s, %d threads)%n",
+                frames, outputDir, seconds, frames / seconds, threads);
+    }
+
+    private void renderTiled() throws IOException, InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + outputDir);
+        }
+
+        int frames = frameCount();
+        String nameFormat = "%s%0" + Math.max(5, String.valueOf(frames - 1).length()) + "d.png";
+        ChordGeometry geometry = ChordGeometry.forCircle(radius, numPoints, width / 2.0, height / 2.0);
+        ChordBuffer chords = new ChordBuffer();
+        TiledExporter tiled = new TiledExporter(width, height, tileSize, threads, background, antialias,
+                TiledExporter.scaledLineWidth(width, height));
+
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            File file = new File(outputDir, String.format(Locale.ROOT, nameFormat, prefix, frame));
+            tiled.export(geometry.map(ttnOf(frame), chords), color,
+                    new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Rendered %d tiled %dx%d frames to %s in %.2fs (%d threads)%n",
+                frames, width, height, outputDir, seconds, threads);
+    }
+
+    private void renderVector() throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create directory " + outputDir);
+        }
+
+        int frames = frameCount();
+        String nameFormat = "%s%0" + Math.max(5, String.valueOf(frames - 1).length()) + "d." + vectorFormat;
+        ChordGeometry geometry = ChordGeometry.forCircle(radius, numPoints, width / 2.0, height / 2.0);
+        ChordBuffer chords = new ChordBuffer();
+        long merged = 0;
+
+        // Writing is bound by the disk long before the CPU, so frames are written one at a time
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            File file = new File(outputDir, String.format(Locale.ROOT, nameFormat, prefix, frame));
+            try (VectorWriter writer = VectorWriter.open(file, width, height, background)) {
+                writer.writeChords(geometry.map(ttnOf(frame), chords), color, 1);
+                merged += writer.getChordsMerged();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Wrote %d %s frames to %s in %.2fs (%.1f frames/s, %d chords merged)%n",
+                frames, vectorFormat.toUpperCase(Locale.ROOT), outputDir, seconds, frames / seconds, merged);
+    }
+
+    private void renderVideo() throws IOException, InterruptedException {
+        int frames = frameCount();
+        ChordGeometry geometry = ChordGeometry.forCircle(radius, numPoints, width / 2.0, height / 2.0);
+        SweepRenderer sweep = new SweepRenderer(geometry, color, background, antialias,
+                width, height, threads, maxInFlight);
+        sweep.setDensity(toneMap, gamma);
+
+        long start = System.nanoTime();
+        try (FrameEncoder encoder = FrameEncoder.open(video, width, height, fps)) {
+            // Workers reuse their image, so each frame is copied before it waits for the encoder
+            sweep.render(frames, this::ttnOf,
+                    (frame, ttn, image) -> new BufferedImage(image.getColorModel(), image.copyData(null),
+                            image.isAlphaPremultiplied(), null),
+                    (frame, ttn, image) -> encoder.encode(image));
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "Encoded %d frames to %s in %.2fs (%.1f frames/s, %d threads)%n",
+                frames, video, seconds, frames / seconds, threads);
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * A reusable list of chords produced by {@link ChordGeometry#map(double, ChordBuffer)}.
+ * <p>
+ * Each chord connects point {@code getFrom(c)} to point {@code getTo(c)} of the circle described by
+ * {@link #getGeometry()}. Degenerate and duplicate chords are not stored, so the buffer usually holds
+ * fewer chords than the circle has points. The index arrays only grow, so filling the same buffer
+ * frame after frame produces no garbage.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class ChordBuffer {
+
+    private static final int[] EMPTY = new int[0];
+    private static final float[] NO_COORDINATES = new float[0];
+
+    private ChordGeometry geometry;
+    private double timesTableNumber;
+    int[] from = EMPTY;
+    int[] to = EMPTY;
+    int count;
+    int degenerateCount;
+    int duplicateCount;
+    private int stride = 1;
+
+    // Endpoint coordinates, gathered on demand for the current chords
+    private float[] x0 = NO_COORDINATES, y0 = NO_COORDINATES, x1 = NO_COORDINATES, y1 = NO_COORDINATES;
+    private boolean endpointsGathered;
+
+    // Layers stacked on top of the chords, mapped into the same frame by a ChordWorker
+    private LayerBatch layers;
+
+    // Density coverage of the current chords, accumulated by a ChordWorker in the DENSITY render mode
+    private DensityRenderer.Coverage coverage;
+    private boolean coverageAccumulated;
+
+    /**
+     * Prepares the buffer to hold chords of a circle, growing the index arrays if needed.
+     *
+     * @param geometry the circle the chords belong to
+     * @param ttn the times table number the chords are computed for
+     * @param capacity the largest number of chords that will be stored
+     */
+    void reset(ChordGeometry geometry, double ttn, int capacity) {
+        this.geometry = geometry;
+        this.timesTableNumber = ttn;
+        this.count = 0;
+        this.degenerateCount = 0;
+        this.duplicateCount = 0;
+        this.stride = 1;
+        this.endpointsGathered = false;
+        this.coverageAccumulated = false;
+        if (from.length < capacity) {
+            from = new int[capacity];
+            to = new int[capacity];
+        }
+    }
+
+    /**
+     * Appends a chord. The buffer must have been reset with enough capacity.
+     *
+     * @param fromPoint the ID of the start point
+     * @param toPoint the ID of the end point
+     */
+    void append(int fromPoint, int toPoint) {
+        from[count] = fromPoint;
+        to[count] = toPoint;
+        count++;
+        endpointsGathered = false;
+    }
+
+    public ChordGeometry getGeometry() {
+        return geometry;
+    }
+
+    public double getTimesTableNumber() {
+        return timesTableNumber;
+    }
+
+    /**
+     * Returns the number of chords in the buffer.
+     *
+     * @return the chord count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns how sparsely the chords were sampled, see {@link #decimate(int)}.
+     *
+     * @return 1 if the buffer holds every chord, otherwise the stride the chords were kept at
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Keeps only every {@code stride}-th chord, for a quick preview of a frame too expensive to draw
+     * in full. The chords are ordered by their start point, so the preview samples the circle evenly,
+     * and the same chords are kept frame after frame, so a moving preview does not flicker.
+     *
+     * @param stride keep one chord out of this many; 1 keeps them all
+     * @return this buffer
+     */
+    public ChordBuffer decimate(int stride) {
+        if (stride <= 1) {
+            return this;
+        }
+        int kept = 0;
+        for (int c = 0; c < count; c += stride, kept++) {
+            from[kept] = from[c];
+            to[kept] = to[c];
+        }
+        count = kept;
+        this.stride *= stride;
+        endpointsGathered = false;
+        coverageAccumulated = false;
+        return this;
+    }
+
+    /**
+     * Returns the number of zero-length chords, from a point to itself, that were left out.
+     *
+     * @return the degenerate chord count
+     */
+    public int getDegenerateCount() {
+        return degenerateCount;
+    }
+
+    /**
+     * Returns the number of chords left out because the same chord was already stored the other way
+     * round.
+     *
+     * @return the duplicate chord count
+     */
+    public int getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /**
+     * Returns the number of chords left out in total, degenerate and duplicate.
+     *
+     * @return the skipped chord count
+     */
+    public int getSkippedCount() {
+        return degenerateCount + duplicateCount;
+    }
+
+    /**
+     * Gathers the screen coordinates of both ends of every chord with the {@link ChordKernel}, so
+     * renderers can read them sequentially instead of looking every point up. Does nothing if the
+     * coordinates of the current chords were already gathered.
+     *
+     * @return this buffer
+     */
+    public ChordBuffer gatherEndpoints() {
+        if (endpointsGathered) {
+            return this;
+        }
+        if (x0.length < count) {
+            int capacity = from.length;
+            x0 = new float[capacity];
+            y0 = new float[capacity];
+            x1 = new float[capacity];
+            y1 = new float[capacity];
+        }
+        ChordKernel.get().gatherEndpoints(geometry.xsFloat(), geometry.ysFloat(), from, to, count, x0, y0, x1, y1);
+        endpointsGathered = true;
+        return this;
+    }
+
+    /**
+     * Maps a stack of layers into this frame, around the centre of the frame's circle, so renderers
+     * can draw them in the same pass as the chords. Must be called after the chords were mapped.
+     *
+     * @param stack the layers, bottom first; may be empty
+     * @return this buffer
+     */
+    public ChordBuffer mapLayers(Layer[] stack) {
+        if (layers == null) {
+            if (stack.length == 0) {
+                return this;
+            }
+            layers = new LayerBatch(geometry.getCenterX(), geometry.getCenterY());
+        }
+        layers.map(stack);
+        return this;
+    }
+
+    /**
+     * Returns the layers last mapped with {@link #mapLayers(Layer[])}.
+     *
+     * @return the layers of the frame, or {@code null} if layers were never mapped into this buffer
+     */
+    public LayerBatch getLayers() {
+        return layers;
+    }
+
+    /**
+     * Accumulates the density coverage of the current chords into a buffer kept with this frame, so
+     * it can be tone-mapped on another thread. Must be called after the chords were mapped.
+     *
+     * @param renderer the renderer to accumulate with
+     * @return this buffer
+     */
+    public ChordBuffer accumulateCoverage(DensityRenderer renderer) {
+        if (coverage == null || coverage.getWidth() != renderer.getWidth()
+                || coverage.getHeight() != renderer.getHeight()) {
+            coverage = new DensityRenderer.Coverage(renderer.getWidth(), renderer.getHeight());
+        }
+        renderer.accumulate(this, coverage);
+        coverageAccumulated = true;
+        return this;
+    }
+
+    /**
+     * Returns the coverage accumulated with {@link #accumulateCoverage(DensityRenderer)}.
+     *
+     * @return the coverage of the current chords, or {@code null} if it was not accumulated
+     */
+    public DensityRenderer.Coverage getCoverage() {
+        return coverageAccumulated ? coverage : null;
+    }
+
+    /**
+     * Returns the x-coordinate of the start of a chord, see {@link #gatherEndpoints()}.
+     *
+     * @param c the index of the chord
+     * @return the x-coordinate in pixels
+     */
+    public float getX0(int c) {
+        return x0[c];
+    }
+
+    /**
+     * Returns the y-coordinate of the start of a chord, see {@link #gatherEndpoints()}.
+     *
+     * @param c the index of the chord
+     * @return the y-coordinate in pixels
+     */
+    public float getY0(int c) {
+        return y0[c];
+    }
+
+    /**
+     * Returns the x-coordinate of the end of a chord, see {@link #gatherEndpoints()}.
+     *
+     * @param c the index of the chord
+     * @return the x-coordinate in pixels
+     */
+    public float getX1(int c) {
+        return x1[c];
+    }
+
+    /**
+     * Returns the y-coordinate of the end of a chord, see {@link #gatherEndpoints()}.
+     *
+     * @param c the index of the chord
+     * @return the y-coordinate in pixels
+     */
+    public float getY1(int c) {
+        return y1[c];
+    }
+
+    /**
+     * Returns the ID of the point a chord starts at.
+     *
+     * @param c the index of the chord
+     * @return the ID of the start point
+     */
+    public int getFrom(int c) {
+        return from[c];
+    }
+
+    /**
+     * Returns the ID of the point a chord ends at.
+     *
+     * @param c the index of the chord
+     * @return the ID of the end point
+     */
+    public int getTo(int c) {
+        return to[c];
+    }
+}
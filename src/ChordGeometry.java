@@ -0,0 +1,335 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Holds the screen coordinates of the points on a circle in flat primitive arrays.
+ * <p>
+ * The coordinates only depend on the radius, the number of points and the centre of the circle,
+ * so they are computed once per combination and cached. Animating the times table number then only
+ * needs {@link #map(double, ChordBuffer)}, which fills a reusable {@link ChordBuffer} without any
+ * trigonometry or allocation once the buffer has grown to the right size.
+ * </p>
+ * <p>
+ * The points are laid out exactly like {@link PointOnCircle#generatePoints(double, double)}:
+ * point 0 sits at 180 degrees and the others follow clockwise on screen.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class ChordGeometry {
+
+    /**
+     * Number of distinct circles kept in the cache. Switching between a handful of point counts
+     * (presets, jump inputs) then never recomputes the coordinates.
+     */
+    private static final int CACHE_SIZE = 8;
+
+    private static final Map<Key, ChordGeometry> CACHE = new LinkedHashMap<Key, ChordGeometry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ChordGeometry> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final double radius;
+    private final int numPoints;
+    private final double centerX, centerY;
+    private final double[] xs, ys;
+    private final float[] xsFloat, ysFloat;
+
+    ChordGeometry(double radius, int numPoints, double centerX, double centerY) {
+        this.radius = radius;
+        this.numPoints = numPoints;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.xs = new double[numPoints];
+        this.ys = new double[numPoints];
+
+        // Point i sits at PI + 2 PI i / numPoints, and cos(PI + a) = -cos(a), sin(PI + a) = -sin(a)
+        CircleTrig trig = CircleTrig.forPoints(numPoints);
+        for (int i = 0; i < numPoints; i++) {
+            xs[i] = centerX - trig.cos(i) * radius;
+            ys[i] = centerY - trig.sin(i) * radius;
+        }
+
+        // Single precision copies for the endpoint gather, plenty for screen coordinates
+        this.xsFloat = new float[numPoints];
+        this.ysFloat = new float[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            xsFloat[i] = (float) xs[i];
+            ysFloat[i] = (float) ys[i];
+        }
+    }
+
+    /**
+     * Returns the geometry of a circle, reusing a cached instance when one exists.
+     *
+     * @param radius the radius of the circle
+     * @param numPoints the number of points on the circumference
+     * @param centerX the x-coordinate of the centre of the circle
+     * @param centerY the y-coordinate of the centre of the circle
+     * @return the geometry of the circle
+     */
+    public static ChordGeometry forCircle(double radius, int numPoints, double centerX, double centerY) {
+        if (numPoints < 0) {
+            throw new IllegalArgumentException("Number of points must not be negative: " + numPoints);
+        }
+        Key key = new Key(radius, numPoints, centerX, centerY);
+        synchronized (CACHE) {
+            ChordGeometry geometry = CACHE.get(key);
+            if (geometry == null) {
+                geometry = new ChordGeometry(radius, numPoints, centerX, centerY);
+                CACHE.put(key, geometry);
+            }
+            return geometry;
+        }
+    }
+
+    /**
+     * Returns the geometry of a circle centred on the application window.
+     *
+     * @param radius the radius of the circle
+     * @param numPoints the number of points on the circumference
+     * @return the geometry of the circle
+     */
+    public static ChordGeometry forCircle(double radius, int numPoints) {
+        return forCircle(radius, numPoints, Main.OFFSET_W, Main.OFFSET_H);
+    }
+
+    /**
+     * Maps every point to the point it is connected to for a times table number, rounded to the
+     * nearest millionth. See {@link #mapFixed(long, ChordBuffer)}.
+     *
+     * @param ttn the times table number
+     * @param buffer the buffer to fill; its arrays are reused when they are large enough
+     * @return the filled buffer
+     */
+    public ChordBuffer map(double ttn, ChordBuffer buffer) {
+        return mapFixed(FixedTtn.fromDouble(ttn), buffer);
+    }
+
+    /**
+     * Maps every point to the point it is connected to for a fixed-point times table number.
+     * Point {@code i} is connected to point {@code floor(ttn * i) mod numPoints}, computed exactly:
+     * the product is carried from one point to the next as an integer part and a remainder in
+     * millionths, so the loop needs neither floating point nor division and gives the same chords
+     * on every machine. The common case, where only point 0 maps to itself, runs on the
+     * {@link ChordKernel} chosen at startup.
+     * <p>
+     * Chords that would draw nothing new are left out: zero-length chords from a point to itself and,
+     * for an integer times table number {@code k}, the second chord of every pair {@code i -> j},
+     * {@code j -> i}. Both only occur at points the mapping sends back to themselves in one or two
+     * steps, the points with {@code (k * k - 1) * i = 0 (mod numPoints)}: the multiples of
+     * {@code numPoints / gcd(k * k - 1, numPoints)}, so only those are checked. Reversed pairs are rare
+     * for fractional numbers and are not looked for. The number of chords left out is reported by
+     * {@link ChordBuffer#getSkippedCount()}.
+     * </p>
+     *
+     * @param ttn the times table number in millionths, see {@link FixedTtn}
+     * @param buffer the buffer to fill; its arrays are reused when they are large enough
+     * @return the filled buffer
+     */
+    public ChordBuffer mapFixed(long ttn, ChordBuffer buffer) {
+        buffer.reset(this, FixedTtn.toDouble(ttn), numPoints);
+        if (numPoints == 0) {
+            return buffer;
+        }
+        int[] from = buffer.from;
+        int[] to = buffer.to;
+
+        // Only ttn mod numPoints matters; split it into whole points and millionths of a point
+        long reduced = Math.floorMod(ttn, numPoints * FixedTtn.SCALE);
+        int whole = (int) (reduced / FixedTtn.SCALE);
+        int fraction = (int) (reduced % FixedTtn.SCALE);
+        int scale = (int) FixedTtn.SCALE;
+
+        int step = fraction == 0 ? returningPointStep(whole) : 0;
+        boolean pairs = step > 0;
+        if (!pairs) {
+            step = 1;
+        }
+
+        // Point 0 always maps to itself. When no other point can return to itself in two steps and
+        // none maps to itself, every other chord is kept and the kernel output is final
+        if (step == numPoints || !pairs) {
+            if (!ChordKernel.get().mapTargets(whole, fraction, numPoints, 1, numPoints - 1, from, to)) {
+                buffer.count = numPoints - 1;
+                buffer.degenerateCount = 1;
+                return buffer;
+            }
+        }
+
+        int nextCheck = 0;
+        int count = 0;
+        int degenerate = 0;
+        int duplicates = 0;
+        int target = 0;
+        int remainder = 0;
+        for (int i = 0; i < numPoints; i++) {
+            int current = target;
+
+            // Advance to the target of i + 1
+            target += whole;
+            remainder += fraction;
+            if (remainder >= scale) {
+                remainder -= scale;
+                target++;
+            }
+            if (target >= numPoints) {
+                target -= numPoints;
+            }
+
+            if (i == nextCheck) {
+                nextCheck += step;
+                if (current == i) {
+                    degenerate++;
+                    continue;
+                }
+                if (pairs && current > i && targetOf(whole, fraction, numPoints, current) == i) {
+                    // Keep the chord of the pair that starts at the larger point
+                    duplicates++;
+                    continue;
+                }
+            }
+            from[count] = i;
+            to[count] = current;
+            count++;
+        }
+
+        buffer.count = count;
+        buffer.degenerateCount = degenerate;
+        buffer.duplicateCount = duplicates;
+        return buffer;
+    }
+
+    /**
+     * Returns {@code floor(ttn * i) mod numPoints} for a times table number split into whole points
+     * and millionths, as in {@link #mapFixed(long, ChordBuffer)}.
+     */
+    static int targetOf(int whole, int fraction, int numPoints, int i) {
+        return (int) (((long) whole * i + (long) fraction * i / FixedTtn.SCALE) % numPoints);
+    }
+
+    /**
+     * Returns the spacing of the points that can map back to themselves in one or two steps for an
+     * integer times table number {@code k}: {@code numPoints / gcd(k * k - 1, numPoints)}.
+     */
+    private int returningPointStep(int k) {
+        long involution = Math.floorMod((long) k * k - 1, (long) numPoints);
+        return (int) (numPoints / gcd(involution, numPoints));
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    /**
+     * Returns the x-coordinate of a point on the circle.
+     *
+     * @param i the ID of the point
+     * @return the x-coordinate of the point
+     */
+    public double getX(int i) {
+        return xs[i];
+    }
+
+    /**
+     * Returns the y-coordinate of a point on the circle.
+     *
+     * @param i the ID of the point
+     * @return the y-coordinate of the point
+     */
+    public double getY(int i) {
+        return ys[i];
+    }
+
+    /**
+     * Returns the x-coordinates of all points. The array is shared and must not be modified.
+     *
+     * @return the x-coordinates indexed by point ID
+     */
+    double[] xs() {
+        return xs;
+    }
+
+    /**
+     * Returns the y-coordinates of all points. The array is shared and must not be modified.
+     *
+     * @return the y-coordinates indexed by point ID
+     */
+    double[] ys() {
+        return ys;
+    }
+
+    /**
+     * Returns the x-coordinates of all points in single precision. The array is shared and must not
+     * be modified.
+     *
+     * @return the x-coordinates indexed by point ID
+     */
+    float[] xsFloat() {
+        return xsFloat;
+    }
+
+    /**
+     * Returns the y-coordinates of all points in single precision. The array is shared and must not
+     * be modified.
+     *
+     * @return the y-coordinates indexed by point ID
+     */
+    float[] ysFloat() {
+        return ysFloat;
+    }
+
+    private static final class Key {
+        private final double radius;
+        private final int numPoints;
+        private final double centerX, centerY;
+
+        Key(double radius, int numPoints, double centerX, double centerY) {
+            this.radius = radius;
+            this.numPoints = numPoints;
+            this.centerX = centerX;
+            this.centerY = centerY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return numPoints == other.numPoints
+                    && Double.compare(radius, other.radius) == 0
+                    && Double.compare(centerX, other.centerX) == 0
+                    && Double.compare(centerY, other.centerY) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(radius, numPoints, centerX, centerY);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * The data-parallel inner loops of the chord pipeline.
+ * <p>
+ * Two kernels run over every point of every frame: mapping each point to its target index, and
+ * gathering the screen coordinates of both ends of every chord into flat arrays for the renderers.
+ * {@link ScalarChordKernel} runs them as plain loops; {@code VectorChordKernel} runs them with the
+ * incubating Java Vector API. {@link #get()} picks one once, at startup.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public interface ChordKernel {
+
+    /**
+     * System property forcing a kernel: {@code scalar} or {@code vector}.
+     */
+    String PROPERTY = "timestable.kernel";
+
+    /**
+     * Maps a run of consecutive points to their targets for a fixed-point times table number, split
+     * into whole points and millionths of a point as in {@link ChordGeometry#mapFixed}. Writes
+     * {@code from[c] = first + c} and {@code to[c] = floor(ttn * (first + c)) mod numPoints}.
+     *
+     * @param whole the times table number modulo {@code numPoints}, whole points
+     * @param fraction the millionths of the times table number, below {@link FixedTtn#SCALE}
+     * @param numPoints the number of points on the circle
+     * @param first the first point to map
+     * @param count the number of points to map
+     * @param from receives the start point of every chord
+     * @param to receives the end point of every chord
+     * @return whether any of the points maps to itself
+     */
+    boolean mapTargets(int whole, int fraction, int numPoints, int first, int count, int[] from, int[] to);
+
+    /**
+     * Gathers the coordinates of both ends of every chord.
+     *
+     * @param xs the x-coordinate of every point
+     * @param ys the y-coordinate of every point
+     * @param from the start point of every chord
+     * @param to the end point of every chord
+     * @param count the number of chords
+     * @param x0 receives the x-coordinate of the start of every chord
+     * @param y0 receives the y-coordinate of the start of every chord
+     * @param x1 receives the x-coordinate of the end of every chord
+     * @param y1 receives the y-coordinate of the end of every chord
+     */
+    void gatherEndpoints(float[] xs, float[] ys, int[] from, int[] to, int count,
+            float[] x0, float[] y0, float[] x1, float[] y1);
+
+    /**
+     * Returns a short name for the kernel, shown in diagnostics.
+     *
+     * @return the name of the kernel
+     */
+    String getName();
+
+    /**
+     * Returns the kernel chosen at startup: the vector kernel when the {@code jdk.incubator.vector}
+     * module was added to the boot layer (with {@code --add-modules jdk.incubator.vector}), the scalar
+     * kernel otherwise or when {@value #PROPERTY} is {@code scalar}.
+     *
+     * @return the kernel
+     */
+    static ChordKernel get() {
+        return Selected.KERNEL;
+    }
+
+    /**
+     * Holds the kernel, chosen when it is first needed.
+     */
+    final class Selected {
+        static final ChordKernel KERNEL = select();
+
+        private Selected() {
+        }
+
+        private static ChordKernel select() {
+            String forced = System.getProperty(PROPERTY, "");
+            if (forced.equalsIgnoreCase("scalar")
+                    || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                return new ScalarChordKernel();
+            }
+            try {
+                // Loaded reflectively so the Vector API classes are never touched without the module
+                return (ChordKernel) Class.forName("VectorChordKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.err.println("Vector kernel not available, using the scalar kernel: " + e);
+                return new ScalarChordKernel();
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import javafx.application.ConditionalFeature;
+import javafx.application.Platform;
+import javafx.scene.AmbientLight;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.MeshView;
+import javafx.scene.shape.TriangleMesh;
+
+/**
+ * Draws all chords of a frame as a single {@link TriangleMesh}, one thin quad per chord.
+ * <p>
+ * Prism hands a mesh to the graphics card in one draw call, where thousands of {@link
+ * javafx.scene.shape.Line} nodes each cost a node to lay out and a shape to rasterize. The quads are
+ * built in primitive float arrays that only grow, and copied into the mesh in place every frame; the
+ * faces only change when the number of chords does, since chord {@code c} always uses vertices
+ * {@code 4c} to {@code 4c + 3}. The mesh is lit by an ambient light scoped to it alone, so every
+ * quad shows exactly the chord color and nothing else in the scene is affected.
+ * </p>
+ * <p>
+ * Meshes need the 3D support of the hardware pipelines. Use {@link #isSupported()} to check: the
+ * software pipeline ({@code -Dprism.order=sw}) has none, and {@link Visualization.RenderMode#MESH}
+ * falls back to {@code CANVAS} there.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class ChordMesh {
+
+    private static final int POINTS_PER_CHORD = 4 * 3;
+    private static final int FACES_PER_CHORD = 2 * 6;
+
+    private final TriangleMesh mesh = new TriangleMesh();
+    private final MeshView view = new MeshView(mesh);
+    private final PhongMaterial material = new PhongMaterial(Color.BLACK);
+    private final Group node;
+    private final float lineWidth;
+
+    private float[] points = new float[0];
+    private int[] faces = new int[0];
+    private int meshChords;
+
+    /**
+     * Constructs an empty mesh drawing chords one pixel wide.
+     */
+    public ChordMesh() {
+        this(1);
+    }
+
+    /**
+     * Constructs an empty mesh.
+     *
+     * @param lineWidth the width of the chords in pixels
+     */
+    public ChordMesh(float lineWidth) {
+        this.lineWidth = lineWidth;
+        // Every vertex shares one texture coordinate, the material has no texture
+        mesh.getTexCoords().addAll(0, 0);
+        view.setMaterial(material);
+        view.setCullFace(CullFace.NONE);
+
+        AmbientLight light = new AmbientLight(Color.WHITE);
+        light.getScope().add(view);
+        node = new Group(view, light);
+        node.setMouseTransparent(true);
+    }
+
+    /**
+     * Tells whether meshes can be shown with the current graphics pipeline.
+     *
+     * @return {@code true} if the pipeline supports 3D shapes
+     */
+    public static boolean isSupported() {
+        return Platform.isSupported(ConditionalFeature.SCENE3D);
+    }
+
+    /**
+     * Returns the node showing the mesh, to be added to the scene once.
+     *
+     * @return the node of the mesh
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * Replaces the chords in the mesh.
+     *
+     * @param chords the chords to show
+     * @param color the color of the chords
+     */
+    public void update(ChordBuffer chords, Color color) {
+        int count = chords.getCount();
+        pack(chords.gatherEndpoints(), count);
+        if (count != meshChords) {
+            ensureFaces(count);
+            mesh.getPoints().setAll(points, 0, count * POINTS_PER_CHORD);
+            mesh.getFaces().setAll(faces, 0, count * FACES_PER_CHORD);
+            meshChords = count;
+        } else {
+            mesh.getPoints().set(0, points, 0, count * POINTS_PER_CHORD);
+        }
+        setColor(color);
+        node.setVisible(true);
+    }
+
+    /**
+     * Changes the color of the chords without touching the geometry.
+     *
+     * @param color the new color
+     */
+    public void setColor(Color color) {
+        material.setDiffuseColor(color);
+    }
+
+    /**
+     * Hides the mesh, for when the frame is drawn some other way.
+     */
+    public void hide() {
+        node.setVisible(false);
+    }
+
+    public boolean isShowing() {
+        return node.isVisible() && meshChords > 0;
+    }
+
+    /**
+     * Turns every chord into a quad: both endpoints pushed half the line width to either side,
+     * across the chord.
+     */
+    private void pack(ChordBuffer chords, int count) {
+        if (points.length < count * POINTS_PER_CHORD) {
+            points = new float[Math.max(count, points.length / POINTS_PER_CHORD * 3 / 2) * POINTS_PER_CHORD];
+        }
+        float halfWidth = lineWidth / 2;
+        for (int c = 0, p = 0; c < count; c++, p += POINTS_PER_CHORD) {
+            float x0 = chords.getX0(c), y0 = chords.getY0(c);
+            float x1 = chords.getX1(c), y1 = chords.getY1(c);
+            float dx = x1 - x0, dy = y1 - y0;
+            // Degenerate chords are never stored, so the length is never zero
+            float scale = halfWidth / (float) Math.sqrt(dx * dx + dy * dy);
+            float nx = -dy * scale, ny = dx * scale;
+
+            points[p] = x0 + nx;
+            points[p + 1] = y0 + ny;
+            points[p + 3] = x0 - nx;
+            points[p + 4] = y0 - ny;
+            points[p + 6] = x1 + nx;
+            points[p + 7] = y1 + ny;
+            points[p + 9] = x1 - nx;
+            points[p + 10] = y1 - ny;
+            // The z-coordinates at p + 2, p + 5, p + 8 and p + 11 stay 0
+        }
+    }
+
+    /**
+     * Fills the face list up to a number of chords: two triangles per quad, all on texture
+     * coordinate 0.
+     */
+    private void ensureFaces(int count) {
+        int filled = faces.length / FACES_PER_CHORD;
+        if (filled >= count) {
+            return;
+        }
+        int grown = Math.max(count, filled * 3 / 2);
+        int[] larger = new int[grown * FACES_PER_CHORD];
+        System.arraycopy(faces, 0, larger, 0, faces.length);
+        for (int c = filled, f = filled * FACES_PER_CHORD; c < grown; c++, f += FACES_PER_CHORD) {
+            int v = c * 4;
+            // Triangle (v, v+1, v+2) and (v+1, v+3, v+2); each vertex index is followed by texture 0
+            larger[f] = v;
+            larger[f + 2] = v + 1;
+            larger[f + 4] = v + 2;
+            larger[f + 6] = v + 1;
+            larger[f + 8] = v + 3;
+            larger[f + 10] = v + 2;
+        }
+        faces = larger;
+    }
+}
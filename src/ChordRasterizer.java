@@ -0,0 +1,153 @@
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Rasterizes chords into a {@link BufferedImage} with Java2D.
+ * <p>
+ * This is the headless counterpart of {@link Visualization#drawLines}: it needs no JavaFX stage or
+ * display, so it can run on a server or inside a benchmark. Chords are collected into batched paths
+ * and stroked with a single call per batch.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class ChordRasterizer {
+
+    /**
+     * Number of chords stroked per path, mirroring the canvas renderer.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    // clearRect replaces pixels rather than blending, so clearing to this leaves them transparent
+    private static final Color TRANSPARENT = new Color(0, 0, 0, 0);
+
+    private final Color background;
+    private final boolean antialias;
+    private final BasicStroke stroke;
+    private final Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, BATCH_SIZE * 2);
+
+    /**
+     * Constructs a rasterizer.
+     *
+     * @param background the color the image is cleared to before drawing, or {@code null} to clear
+     *                   it to transparent
+     * @param antialias whether the chords are drawn with anti-aliasing
+     */
+    public ChordRasterizer(Color background, boolean antialias) {
+        this(background, antialias, 1);
+    }
+
+    /**
+     * Constructs a rasterizer drawing lines of a given width, for output much larger than the screen.
+     *
+     * @param background the color the image is cleared to before drawing, or {@code null} to clear
+     *                   it to transparent
+     * @param antialias whether the chords are drawn with anti-aliasing
+     * @param lineWidth the width of the chords in pixels
+     */
+    public ChordRasterizer(Color background, boolean antialias, float lineWidth) {
+        this.background = background;
+        this.antialias = antialias;
+        this.stroke = new BasicStroke(lineWidth);
+    }
+
+    /**
+     * Creates an image in the pixel format the rasterizer draws fastest into.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return a new image
+     */
+    public static BufferedImage createImage(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * Clears an image and draws the chords into it.
+     *
+     * @param chords the chords to draw
+     * @param color the color of the chords
+     * @param image the image to draw into
+     */
+    public void render(ChordBuffer chords, Color color, BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        try {
+            // Images are reused from frame to frame, so they are cleared even for a transparent background
+            g.setBackground(background != null ? background : TRANSPARENT);
+            g.clearRect(0, 0, image.getWidth(), image.getHeight());
+            draw(chords, color, g);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Draws the chords with an existing graphics context, leaving its transform and clip untouched.
+     *
+     * @param chords the chords to draw
+     * @param color the color of the chords
+     * @param g the graphics context to draw with
+     */
+    public void draw(ChordBuffer chords, Color color, Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setStroke(stroke);
+        g.setColor(color);
+
+        chords.gatherEndpoints();
+
+        path.reset();
+        int batched = 0;
+        for (int c = 0; c < chords.getCount(); c++) {
+            path.moveTo(chords.getX0(c), chords.getY0(c));
+            path.lineTo(chords.getX1(c), chords.getY1(c));
+
+            if (++batched == BATCH_SIZE) {
+                g.draw(path);
+                path.reset();
+                batched = 0;
+            }
+        }
+        g.draw(path);
+    }
+
+    /**
+     * Draws a stack of layers on top of what the graphics context holds, in the color of each layer,
+     * like {@link Visualization#drawLayers} does on the canvas.
+     *
+     * @param layers the mapped layers, or {@code null} for none
+     * @param g the graphics context to draw with
+     */
+    public void drawLayers(LayerBatch layers, Graphics2D g) {
+        if (layers == null || layers.getCount() == 0) {
+            return;
+        }
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                antialias ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setStroke(stroke);
+
+        int c = 0;
+        for (int l = 0; l < layers.getLayerCount(); l++) {
+            javafx.scene.paint.Color color = layers.getLayers()[l].getColor();
+            g.setColor(new Color((float) color.getRed(), (float) color.getGreen(), (float) color.getBlue(),
+                    (float) color.getOpacity()));
+            path.reset();
+            int batched = 0;
+            for (int end = layers.getLayerEnd(l); c < end; c++) {
+                path.moveTo(layers.getX0(c), layers.getY0(c));
+                path.lineTo(layers.getX1(c), layers.getY1(c));
+
+                if (++batched == BATCH_SIZE) {
+                    g.draw(path);
+                    path.reset();
+                    batched = 0;
+                }
+            }
+            g.draw(path);
+        }
+    }
+}
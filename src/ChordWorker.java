@@ -0,0 +1,250 @@
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Maps chords on a background thread and hands finished frames to the JavaFX Application Thread.
+ * <p>
+ * The FX thread posts the times table number it wants with {@link #request} and picks up finished
+ * frames with {@link #poll}, so the only work left on the FX thread is issuing draw calls. Frames
+ * move between the threads through atomic references and a lock-free pool of three
+ * {@link ChordBuffer}s: one on screen, one ready to be shown and one being filled. Requests that are
+ * overtaken by a newer one before the worker gets to them, and finished frames that are replaced
+ * before the FX thread picks them up, are dropped and counted. {@link #cancel} withdraws everything
+ * in flight, for when the FX thread put a frame on screen some other way.
+ * </p>
+ * <p>
+ * In the DENSITY render mode the worker also accumulates the coverage of each frame with a
+ * {@link DensityRenderer} of its own, so the FX thread only tone-maps the finished coverage.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class ChordWorker implements Closeable {
+
+    private static final int BUFFER_COUNT = 3;
+    private static final Layer[] NO_LAYERS = new Layer[0];
+
+    private static final class Request {
+        final ChordGeometry geometry;
+        final double ttn;
+        final Layer[] layers;
+        final int stride;
+        final boolean density;
+        final long generation;
+
+        Request(ChordGeometry geometry, double ttn, Layer[] layers, int stride, boolean density, long generation) {
+            this.geometry = geometry;
+            this.ttn = ttn;
+            this.layers = layers;
+            this.stride = stride;
+            this.density = density;
+            this.generation = generation;
+        }
+    }
+
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicReference<ChordBuffer> ready = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<ChordBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final Thread thread;
+    private final RenderMetrics metrics;
+    private final int densityWidth, densityHeight;
+    private volatile boolean closed;
+    // Bumped by cancel(); a frame mapped under an older generation is never handed out
+    private volatile long generation;
+
+    // Only touched by the FX thread
+    private ChordBuffer displayed;
+
+    // Only touched by the worker thread; created the first time a frame asks for coverage
+    private DensityRenderer densityRenderer;
+
+    /**
+     * Creates the worker and starts its thread.
+     *
+     * @param metrics where the time spent mapping chords is recorded, or {@code null}
+     * @param densityWidth the width of the density coverage accumulated for frames that ask for it
+     * @param densityHeight the height of the density coverage
+     */
+    public ChordWorker(RenderMetrics metrics, int densityWidth, int densityHeight) {
+        this.metrics = metrics;
+        this.densityWidth = densityWidth;
+        this.densityHeight = densityHeight;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            free.add(new ChordBuffer());
+        }
+        thread = new Thread(this::loop, "chord-worker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Asks for the chords of a times table number. Replaces any request the worker has not started
+     * on yet.
+     *
+     * @param geometry the circle to map the chords on
+     * @param ttn the times table number
+     */
+    public void request(ChordGeometry geometry, double ttn) {
+        request(geometry, ttn, NO_LAYERS);
+    }
+
+    /**
+     * Asks for the chords of a times table number with a stack of layers on top, mapped into the
+     * same frame. Replaces any request the worker has not started on yet.
+     *
+     * @param geometry the circle to map the chords on
+     * @param ttn the times table number
+     * @param layers the layers, bottom first; must not be modified afterwards
+     */
+    public void request(ChordGeometry geometry, double ttn, Layer[] layers) {
+        request(geometry, ttn, layers, 1);
+    }
+
+    /**
+     * Asks for a preview of a frame that keeps only every {@code stride}-th chord, see
+     * {@link ChordBuffer#decimate(int)}. Layers are always mapped in full. Replaces any request the
+     * worker has not started on yet.
+     *
+     * @param geometry the circle to map the chords on
+     * @param ttn the times table number
+     * @param layers the layers, bottom first; must not be modified afterwards
+     * @param stride keep one chord out of this many; 1 maps the full frame
+     */
+    public void request(ChordGeometry geometry, double ttn, Layer[] layers, int stride) {
+        request(geometry, ttn, layers, stride, false);
+    }
+
+    /**
+     * Asks for a frame, optionally with the density coverage of its chords accumulated, see
+     * {@link ChordBuffer#getCoverage()}. Replaces any request the worker has not started on yet.
+     *
+     * @param geometry the circle to map the chords on
+     * @param ttn the times table number
+     * @param layers the layers, bottom first; must not be modified afterwards
+     * @param stride keep one chord out of this many; 1 maps the full frame
+     * @param density whether to accumulate the coverage of the chords
+     */
+    public void request(ChordGeometry geometry, double ttn, Layer[] layers, int stride, boolean density) {
+        if (pending.getAndSet(new Request(geometry, ttn, layers, stride, density, generation)) != null) {
+            droppedFrames.incrementAndGet();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Withdraws the pending request and any finished frame not polled yet, including the frame the
+     * worker is mapping right now. Must only be called from the thread that polls.
+     */
+    public void cancel() {
+        generation++;
+        if (pending.getAndSet(null) != null) {
+            droppedFrames.incrementAndGet();
+        }
+        ChordBuffer stale = ready.getAndSet(null);
+        if (stale != null) {
+            free.add(stale);
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes the most recently finished frame, if there is one. The returned buffer stays valid
+     * until the next successful poll, and is also available from {@link #getDisplayed()} until then.
+     * Must only be called from one thread, normally the FX thread.
+     *
+     * @return the new frame, or {@code null} if no frame finished since the last poll
+     */
+    public ChordBuffer poll() {
+        ChordBuffer frame = ready.getAndSet(null);
+        if (frame == null) {
+            return null;
+        }
+        if (displayed != null) {
+            free.add(displayed);
+        }
+        displayed = frame;
+        return frame;
+    }
+
+    /**
+     * Returns the frame last handed out by {@link #poll()}.
+     *
+     * @return the frame on screen, or {@code null} if none was polled yet
+     */
+    public ChordBuffer getDisplayed() {
+        return displayed;
+    }
+
+    /**
+     * Returns the number of frames that were requested but never shown because newer ones
+     * overtook them.
+     *
+     * @return the dropped frame count
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private void loop() {
+        while (!closed) {
+            Request request = pending.getAndSet(null);
+            if (request == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            ChordBuffer buffer = free.poll();
+            if (buffer == null) {
+                // Only possible if the FX thread holds on to frames it did not poll through us
+                buffer = new ChordBuffer();
+            }
+            long start = System.nanoTime();
+            // Gathering the endpoints here too leaves the FX thread only the draw calls
+            request.geometry.map(request.ttn, buffer).decimate(request.stride).gatherEndpoints()
+                    .mapLayers(request.layers);
+            if (request.density) {
+                if (densityRenderer == null) {
+                    densityRenderer = new DensityRenderer(densityWidth, densityHeight,
+                            Runtime.getRuntime().availableProcessors());
+                }
+                buffer.accumulateCoverage(densityRenderer);
+            }
+            if (metrics != null) {
+                metrics.recordStage(RenderMetrics.Stage.GEOMETRY, System.nanoTime() - start);
+            }
+
+            if (generation != request.generation) {
+                free.add(buffer);
+                droppedFrames.incrementAndGet();
+                continue;
+            }
+            ChordBuffer stale = ready.getAndSet(buffer);
+            if (stale != null) {
+                free.add(stale);
+                droppedFrames.incrementAndGet();
+            }
+            // A cancel between the check and the publish either took the frame back already or
+            // leaves it to us; compareAndSet makes sure exactly one side returns it to the pool
+            if (generation != request.generation && ready.compareAndSet(buffer, null)) {
+                free.add(buffer);
+                droppedFrames.incrementAndGet();
+            }
+        }
+        if (densityRenderer != null) {
+            densityRenderer.close();
+        }
+    }
+
+    /**
+     * Stops the worker thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,512 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Renders chords as a density map instead of opaque strokes.
+ * <p>
+ * At high point counts the strokes of {@link ChordRasterizer} and {@link Visualization#drawLines}
+ * pile on top of each other until the middle of the circle is a solid blob of the line color. This
+ * renderer adds up how much of each pixel every chord covers in a float accumulation buffer, drawing
+ * the chords with Xiaolin Wu's anti-aliased line algorithm, and then tone-maps the accumulated
+ * coverage to an image with a linear, gamma or logarithmic curve, so dense regions stay readable.
+ * </p>
+ * <p>
+ * The image is split into horizontal stripes shared out among worker threads. Every stripe draws all
+ * chords, clipped to its rows, and later tone-maps those rows. Each pixel thus adds up its coverage
+ * in chord order whatever the number of threads, so the result is the same for any thread count.
+ * The coverage of a frame can be kept in a {@link Coverage} of its own, accumulated on one thread and
+ * tone-mapped on another; a single-threaded renderer that only tone-maps such coverage holds no
+ * pool and no accumulation buffer of its own. All buffers and tasks are allocated once, so rendering
+ * a frame allocates nothing. A renderer is not thread-safe: use one per rendering thread.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class DensityRenderer implements AutoCloseable {
+
+    /**
+     * The curves mapping accumulated coverage to line opacity.
+     * <p>
+     * {@code LINEAR} scales coverage by the densest pixel, {@code GAMMA} brightens faint regions with
+     * a power curve and {@code LOG} compresses the range logarithmically, which keeps single chords
+     * visible next to pixels crossed by thousands of them.
+     * </p>
+     */
+    public enum ToneMap {
+        LINEAR, GAMMA, LOG
+    }
+
+    /**
+     * The gamma used when none is given.
+     */
+    public static final double DEFAULT_GAMMA = 2.2;
+
+    /**
+     * Tone lookup table layout: coverage below {@code FINE_LIMIT} is looked up in steps of
+     * {@code 1 / FINE_STEPS} so faint chords are not rounded away, the remaining range up to the
+     * densest pixel is split into {@code COARSE_LEVELS} even steps.
+     */
+    private static final int FINE_LIMIT = 256;
+    private static final int FINE_STEPS = 64;
+    private static final int FINE_LEVELS = FINE_LIMIT * FINE_STEPS;
+    private static final int COARSE_LEVELS = 16384;
+
+    // More stripes than threads, so a thread done with a sparse stripe can take over a dense one
+    private static final int STRIPES_PER_THREAD = 4;
+
+    // Line steps between exact restarts of the incremental position, see line(); a power of two
+    private static final int ANCHOR_STEPS = 64;
+
+    private enum Phase {
+        ACCUMULATE, TONE
+    }
+
+    /**
+     * The accumulated coverage of one frame, in pixels fully covered by a chord, row by row.
+     */
+    public static final class Coverage {
+        private final int width, height;
+        private final float[] density;
+        private float maxDensity;
+
+        /**
+         * Creates an empty coverage buffer.
+         *
+         * @param width the width of the image in pixels
+         * @param height the height of the image in pixels
+         */
+        public Coverage(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.density = new float[width * height];
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        /**
+         * Returns the coverage of the densest pixel.
+         *
+         * @return the largest accumulated coverage
+         */
+        public float getMaxDensity() {
+            return maxDensity;
+        }
+    }
+
+    private final int width, height;
+    // Created on the first accumulate(ChordBuffer) or toneMap without a Coverage
+    private Coverage own;
+    private final float[] stripeMax;
+    private final int[] pixels;
+    private final int[] lut = new int[FINE_LEVELS + COARSE_LEVELS + 1];
+    private final ForkJoinPool pool;
+    private final Stripe[] stripes;
+    private final RecursiveAction root;
+
+    // State of the frame being rendered, read by the stripes
+    private Phase phase;
+    private ChordBuffer chords;
+    private Coverage coverage;
+    private float coarseScale;
+
+    /**
+     * Constructs a density renderer.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param threads the number of threads accumulating and tone-mapping a frame
+     */
+    public DensityRenderer(int width, int height, int threads) {
+        if (width <= 0 || height <= 0 || threads < 1) {
+            throw new IllegalArgumentException("width, height and threads must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        int count = threads > 1 ? Math.min(height, threads * STRIPES_PER_THREAD) : 1;
+        this.stripeMax = new float[count];
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(i);
+        }
+
+        if (threads > 1) {
+            this.pool = new ForkJoinPool(threads);
+            this.root = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(stripes);
+                }
+            };
+        } else {
+            this.pool = null;
+            this.root = null;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the coverage of the densest pixel of the last frame accumulated with
+     * {@link #accumulate(ChordBuffer)}.
+     *
+     * @return the largest accumulated coverage, in pixels fully covered by a chord
+     */
+    public float getMaxDensity() {
+        return own == null ? 0 : own.maxDensity;
+    }
+
+    /**
+     * Accumulates the coverage of chords, replacing the previous frame.
+     *
+     * @param chords the chords to accumulate
+     */
+    public void accumulate(ChordBuffer chords) {
+        accumulate(chords, own());
+    }
+
+    /**
+     * Accumulates the coverage of chords into a buffer of the renderer's size, replacing what it held.
+     *
+     * @param chords the chords to accumulate
+     * @param into the buffer to accumulate into
+     */
+    public void accumulate(ChordBuffer chords, Coverage into) {
+        checkSize(into);
+        this.chords = chords.gatherEndpoints();
+        this.coverage = into;
+        try {
+            run(Phase.ACCUMULATE);
+        } finally {
+            this.chords = null;
+            this.coverage = null;
+        }
+
+        float max = 0;
+        for (float stripe : stripeMax) {
+            max = Math.max(max, stripe);
+        }
+        into.maxDensity = max;
+    }
+
+    /**
+     * Tone-maps the last frame accumulated with {@link #accumulate(ChordBuffer)}. Can be called
+     * again with other colors or curves without accumulating the chords again.
+     *
+     * @param color the color of fully dense pixels
+     * @param background the color of empty pixels, or {@code null} for a transparent background
+     * @param toneMap the curve mapping coverage to opacity
+     * @param gamma the gamma of the {@code GAMMA} curve
+     * @return the image as packed ARGB pixels, row by row; reused by the next call
+     */
+    public int[] toneMap(Color color, Color background, ToneMap toneMap, double gamma) {
+        return toneMap(own(), color, background, toneMap, gamma);
+    }
+
+    private Coverage own() {
+        if (own == null) {
+            own = new Coverage(width, height);
+        }
+        return own;
+    }
+
+    /**
+     * Tone-maps coverage accumulated by any renderer of the same size.
+     *
+     * @param from the coverage to tone-map
+     * @param color the color of fully dense pixels
+     * @param background the color of empty pixels, or {@code null} for a transparent background
+     * @param toneMap the curve mapping coverage to opacity
+     * @param gamma the gamma of the {@code GAMMA} curve
+     * @return the image as packed ARGB pixels, row by row; reused by the next call
+     */
+    public int[] toneMap(Coverage from, Color color, Color background, ToneMap toneMap, double gamma) {
+        checkSize(from);
+        buildLut(from.maxDensity, color, background, toneMap, gamma);
+        this.coverage = from;
+        try {
+            run(Phase.TONE);
+        } finally {
+            this.coverage = null;
+        }
+        return pixels;
+    }
+
+    private void checkSize(Coverage buffer) {
+        if (buffer.width != width || buffer.height != height) {
+            throw new IllegalArgumentException("coverage is " + buffer.width + "x" + buffer.height
+                    + ", the renderer " + width + "x" + height);
+        }
+    }
+
+    /**
+     * Accumulates chords and tone-maps them into an image of the renderer's size.
+     *
+     * @param chords the chords to draw
+     * @param color the color of fully dense pixels
+     * @param background the color of empty pixels, or {@code null} for a transparent background
+     * @param toneMap the curve mapping coverage to opacity
+     * @param gamma the gamma of the {@code GAMMA} curve
+     * @param image the image to draw into
+     */
+    public void render(ChordBuffer chords, Color color, Color background, ToneMap toneMap, double gamma,
+            BufferedImage image) {
+        accumulate(chords);
+        int[] argb = toneMap(color, background, toneMap, gamma);
+
+        int[] target = PngChunks.backingPixels(image);
+        if (target != null && image.getType() == BufferedImage.TYPE_INT_ARGB) {
+            System.arraycopy(argb, 0, target, 0, argb.length);
+        } else {
+            image.setRGB(0, 0, width, height, argb, 0, width);
+        }
+    }
+
+    /**
+     * Shuts down the worker threads.
+     */
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private void run(Phase next) {
+        phase = next;
+        if (pool == null) {
+            stripes[0].work();
+            return;
+        }
+        for (Stripe stripe : stripes) {
+            stripe.reinitialize();
+        }
+        root.reinitialize();
+        pool.invoke(root);
+    }
+
+    /**
+     * One worker's share of a frame, a band of rows.
+     */
+    private final class Stripe extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+
+        Stripe(int index) {
+            this.index = index;
+        }
+
+        @Override
+        protected void compute() {
+            work();
+        }
+
+        void work() {
+            switch (phase) {
+                case ACCUMULATE:
+                    accumulateRows(index);
+                    break;
+                case TONE:
+                    toneRows(index);
+                    break;
+            }
+        }
+    }
+
+    private void accumulateRows(int index) {
+        int top = rowStart(index);
+        int bottom = rowStart(index + 1);
+        float[] density = coverage.density;
+        Arrays.fill(density, top * width, bottom * width, 0f);
+
+        // A chord touches the rows between its ends and up to two rows beyond them
+        float low = top - 2;
+        float high = bottom + 2;
+        int count = chords.getCount();
+        for (int c = 0; c < count; c++) {
+            float y0 = chords.getY0(c);
+            float y1 = chords.getY1(c);
+            if (Math.max(y0, y1) < low || Math.min(y0, y1) > high) {
+                continue;
+            }
+            line(density, top, bottom, chords.getX0(c), y0, chords.getX1(c), y1);
+        }
+
+        float max = 0;
+        for (int p = top * width, end = bottom * width; p < end; p++) {
+            max = Math.max(max, density[p]);
+        }
+        stripeMax[index] = max;
+    }
+
+    private void toneRows(int index) {
+        int start = rowStart(index) * width;
+        int end = rowStart(index + 1) * width;
+        float[] density = coverage.density;
+        for (int p = start; p < end; p++) {
+            float d = density[p];
+            int level = d < FINE_LIMIT
+                    ? (int) (d * FINE_STEPS)
+                    : FINE_LEVELS + Math.min((int) ((d - FINE_LIMIT) * coarseScale), COARSE_LEVELS);
+            pixels[p] = lut[level];
+        }
+    }
+
+    private int rowStart(int index) {
+        return (int) ((long) height * index / stripes.length);
+    }
+
+    /**
+     * Fills the tone lookup table with the final pixel of every coverage level.
+     */
+    private void buildLut(float max, Color color, Color background, ToneMap toneMap, double gamma) {
+        coarseScale = max > FINE_LIMIT ? COARSE_LEVELS / (max - FINE_LIMIT) : 0;
+
+        double logMax = Math.log1p(max);
+        for (int level = 0; level < lut.length; level++) {
+            double d;
+            if (level < FINE_LEVELS) {
+                d = (double) level / FINE_STEPS;
+            } else if (coarseScale == 0) {
+                // Nothing denser than FINE_LIMIT, which toneRows maps to the first coarse level
+                d = FINE_LIMIT;
+            } else {
+                d = FINE_LIMIT + (level - FINE_LEVELS) / (double) coarseScale;
+            }
+            double t;
+            if (max <= 0) {
+                t = 0;
+            } else {
+                switch (toneMap) {
+                    case GAMMA:
+                        t = Math.pow(Math.min(d / max, 1), 1 / gamma);
+                        break;
+                    case LOG:
+                        t = Math.min(Math.log1p(d) / logMax, 1);
+                        break;
+                    default:
+                        t = Math.min(d / max, 1);
+                        break;
+                }
+            }
+            lut[level] = blend(color, background, t);
+        }
+    }
+
+    private static int blend(Color color, Color background, double t) {
+        if (background == null) {
+            int alpha = (int) Math.round(t * color.getAlpha());
+            return alpha << 24 | (color.getRGB() & 0xffffff);
+        }
+        int r = mix(background.getRed(), color.getRed(), t);
+        int g = mix(background.getGreen(), color.getGreen(), t);
+        int b = mix(background.getBlue(), color.getBlue(), t);
+        return background.getAlpha() << 24 | r << 16 | g << 8 | b;
+    }
+
+    private static int mix(int from, int to, double t) {
+        return (int) Math.round(from + (to - from) * t);
+    }
+
+    /**
+     * Adds the coverage of an anti-aliased line to the rows {@code top} to {@code bottom} of a buffer,
+     * following Xiaolin Wu's algorithm: every step along the major axis splits one unit of coverage
+     * between the two pixels straddling the line. Each step adds the gradient to the one before,
+     * restarting from an exact value every {@value #ANCHOR_STEPS} steps from the start of the line, so
+     * skipping the steps outside the rows changes no value inside.
+     */
+    private void line(float[] density, int top, int bottom, double x0, double y0, double x1, double y1) {
+        boolean steep = Math.abs(y1 - y0) > Math.abs(x1 - x0);
+        if (steep) {
+            double t = x0; x0 = y0; y0 = t;
+            t = x1; x1 = y1; y1 = t;
+        }
+        if (x0 > x1) {
+            double t = x0; x0 = x1; x1 = t;
+            t = y0; y0 = y1; y1 = t;
+        }
+
+        double dx = x1 - x0;
+        double gradient = dx == 0 ? 1 : (y1 - y0) / dx;
+
+        // First endpoint
+        double xEnd = Math.rint(x0);
+        double yStart = y0 + gradient * (xEnd - x0);
+        double xGap = 1 - fraction(x0 + 0.5);
+        int xStart = (int) xEnd;
+        plotPair(density, top, bottom, steep, xStart, yStart, xGap);
+
+        // Second endpoint
+        xEnd = Math.rint(x1);
+        double yEnd = y1 + gradient * (xEnd - x1);
+        xGap = fraction(x1 + 0.5);
+        int xStop = (int) xEnd;
+        plotPair(density, top, bottom, steep, xStop, yEnd, xGap);
+
+        // The steps that can reach the rows: along a steep line each step is a row, otherwise the
+        // steps where the line is within a row of them
+        int from = xStart + 1;
+        int to = xStop;
+        if (steep) {
+            from = Math.max(from, top);
+            to = Math.min(to, bottom);
+        } else if (gradient != 0) {
+            double a = xStart + (top - 1 - yStart) / gradient;
+            double b = xStart + (bottom - yStart) / gradient;
+            from = (int) Math.max(from, Math.floor(Math.min(a, b)) - 1);
+            to = (int) Math.min(to, Math.ceil(Math.max(a, b)) + 1);
+        }
+        // Step from the anchor at or before the first step needed, so every step sees the same value
+        // whichever stripe draws it
+        from = xStart + 1 + Math.floorDiv(from - xStart - 1, ANCHOR_STEPS) * ANCHOR_STEPS;
+        double intery = 0;
+        for (int x = from; x < to; x++) {
+            if (((x - xStart - 1) & (ANCHOR_STEPS - 1)) == 0) {
+                intery = yStart + gradient * (x - xStart);
+            }
+            plotPair(density, top, bottom, steep, x, intery, 1);
+            intery += gradient;
+        }
+    }
+
+    private void plotPair(float[] density, int top, int bottom, boolean steep, int x, double y, double coverage) {
+        double floor = Math.floor(y);
+        int iy = (int) floor;
+        float below = (float) ((y - floor) * coverage);
+        float above = (float) coverage - below;
+        if (steep) {
+            plot(density, top, bottom, iy, x, above);
+            plot(density, top, bottom, iy + 1, x, below);
+        } else {
+            plot(density, top, bottom, x, iy, above);
+            plot(density, top, bottom, x, iy + 1, below);
+        }
+    }
+
+    private void plot(float[] density, int top, int bottom, int x, int y, float coverage) {
+        if (x >= 0 && x < width && y >= top && y < bottom) {
+            density[y * width + x] += coverage;
+        }
+    }
+
+    private static double fraction(double value) {
+        return value - Math.floor(value);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Decides how many chords to draw while the user is interacting, from the measured frame time.
+ * <p>
+ * Holding an arrow key or dragging the timeline asks for a new frame on every event. At high point
+ * counts drawing every chord of each one stalls the pulses, so input lags behind. While input keeps
+ * coming, frames are drawn as previews that keep only every {@code stride}-th chord
+ * ({@link ChordBuffer#decimate(int)}). The stride is the smallest power of two that brings the frame
+ * within the {@value #BUDGET_PROPERTY} budget, in milliseconds. Once input has been quiet for
+ * {@value #SETTLE_MILLIS} ms the preview is refined: the stride shrinks by {@value #REFINE_FACTOR}
+ * per frame until every chord is drawn.
+ * </p>
+ * <p>
+ * The cost of a chord is learned from the pulses. A frame's cost is the time from the pulse that
+ * presented it to the next pulse, minus the time an idle pulse takes, spread over its chords. That
+ * covers whatever the render mode costs, on the FX thread or in the renderer. Small frames say
+ * little about the cost per chord and are not sampled. The policy is only used on the FX thread.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class DetailPolicy {
+
+    /**
+     * System property holding the time a frame may take beyond an idle pulse while interacting, in
+     * milliseconds.
+     */
+    public static final String BUDGET_PROPERTY = "timestable.lod.budgetMs";
+
+    /**
+     * The budget used when the property is not set.
+     */
+    public static final int DEFAULT_BUDGET_MS = 12;
+
+    /**
+     * Input must have been quiet this long before previews are refined.
+     */
+    public static final int SETTLE_MILLIS = 150;
+
+    /**
+     * Each refinement step keeps this many times more chords than the previous one.
+     */
+    public static final int REFINE_FACTOR = 4;
+
+    private static final int MAX_STRIDE = 64;
+    private static final int MIN_SAMPLE_CHORDS = 10_000;
+    private static final double SMOOTHING = 0.3;
+    // How quickly the idle pulse time drifts up after a short one, per pulse
+    private static final double IDLE_DRIFT = 1.0 / 256;
+
+    private final long budgetNanos;
+    private final long settleNanos = SETTLE_MILLIS * 1_000_000L;
+
+    private double nanosPerChord = Double.NaN;
+    private double idlePulseNanos = Double.NaN;
+    private long lastPulse;
+    private int presentedChords;
+    private long lastInteraction;
+    private boolean interacted;
+
+    /**
+     * Creates a policy with the budget from the {@value #BUDGET_PROPERTY} system property.
+     */
+    public DetailPolicy() {
+        this(Math.max(1, Integer.getInteger(BUDGET_PROPERTY, DEFAULT_BUDGET_MS)) * 1_000_000L);
+    }
+
+    /**
+     * Creates a policy with a given budget.
+     *
+     * @param budgetNanos the time a frame may take beyond an idle pulse while interacting
+     */
+    public DetailPolicy(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Records user input that asks for a new frame.
+     *
+     * @param nowNanos the time of the input
+     */
+    public void interact(long nowNanos) {
+        lastInteraction = nowNanos;
+        interacted = true;
+    }
+
+    /**
+     * Tells whether input arrived recently enough that frames should still be previews.
+     *
+     * @param nowNanos the current time
+     * @return {@code true} while the user is interacting
+     */
+    public boolean isInteracting(long nowNanos) {
+        return interacted && nowNanos - lastInteraction < settleNanos;
+    }
+
+    /**
+     * Records the start of an animation pulse. Call once per pulse, before presenting a frame in it.
+     *
+     * @param nowNanos the pulse timestamp
+     */
+    public void recordPulse(long nowNanos) {
+        if (lastPulse != 0) {
+            long interval = nowNanos - lastPulse;
+            if (presentedChords >= MIN_SAMPLE_CHORDS && !Double.isNaN(idlePulseNanos)) {
+                double sample = Math.max(0, interval - idlePulseNanos) / presentedChords;
+                nanosPerChord = Double.isNaN(nanosPerChord) ? sample
+                        : nanosPerChord + (sample - nanosPerChord) * SMOOTHING;
+            }
+            // The shortest recent pulses are the idle ones; let the estimate creep up slowly so a
+            // display that changes its refresh rate is followed
+            if (Double.isNaN(idlePulseNanos) || interval < idlePulseNanos) {
+                idlePulseNanos = interval;
+            } else {
+                idlePulseNanos += (interval - idlePulseNanos) * IDLE_DRIFT;
+            }
+        }
+        lastPulse = nowNanos;
+        presentedChords = 0;
+    }
+
+    /**
+     * Records a frame put on screen during the current pulse.
+     *
+     * @param chords the number of chords drawn
+     */
+    public void recordPresented(int chords) {
+        presentedChords += chords;
+    }
+
+    /**
+     * Returns the stride to map the next frame with.
+     *
+     * @param chords the number of chords of the full frame, roughly the number of points
+     * @param nowNanos the current time
+     * @return 1 for a full frame, or a power of two if a preview is drawn
+     */
+    public int strideFor(int chords, long nowNanos) {
+        if (!isInteracting(nowNanos) || Double.isNaN(nanosPerChord)) {
+            return 1;
+        }
+        double cost = nanosPerChord * chords;
+        int stride = 1;
+        while (stride < MAX_STRIDE && cost / stride > budgetNanos) {
+            stride *= 2;
+        }
+        return stride;
+    }
+
+    /**
+     * Returns the stride of the next refinement step of a preview.
+     *
+     * @param stride the stride of the preview on screen
+     * @return a smaller stride, down to 1 for the full frame
+     */
+    public static int refine(int stride) {
+        return Math.max(1, stride / REFINE_FACTOR);
+    }
+
+    /**
+     * Returns the learned cost of drawing one chord.
+     *
+     * @return the cost in nanoseconds, or {@code NaN} before the first large frame was measured
+     */
+    public double getNanosPerChord() {
+        return nanosPerChord;
+    }
+}
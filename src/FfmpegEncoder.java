@@ -0,0 +1,114 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Video encoder that pipes raw frames into a local ffmpeg process.
+ * <p>
+ * The container and codec follow from the file extension as ffmpeg chooses them. Frames are padded
+ * to even dimensions and converted to yuv420p so the result plays in common players.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class FfmpegEncoder implements FrameEncoder {
+
+    /**
+     * System property that points at an ffmpeg binary outside the PATH.
+     */
+    public static final String FFMPEG_PROPERTY = "timestable.ffmpeg";
+
+    private final Process process;
+    private final OutputStream out;
+    private final int width, height;
+    private final byte[] bytes;
+    private int[] scratch;
+
+    /**
+     * Starts ffmpeg writing to a file.
+     *
+     * @param ffmpeg the path of the ffmpeg binary
+     * @param file the file to write
+     * @param width the width of every frame
+     * @param height the height of every frame
+     * @param fps the playback rate in frames per second
+     * @throws IOException if ffmpeg cannot be started
+     */
+    public FfmpegEncoder(String ffmpeg, File file, int width, int height, double fps) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.bytes = new byte[width * height * 4];
+
+        ProcessBuilder builder = new ProcessBuilder(ffmpeg, "-y", "-loglevel", "error",
+                "-f", "rawvideo", "-pix_fmt", "argb",
+                "-s", width + "x" + height,
+                "-r", String.format(Locale.ROOT, "%.3f", fps),
+                "-i", "-",
+                "-vf", "pad=ceil(iw/2)*2:ceil(ih/2)*2",
+                "-pix_fmt", "yuv420p",
+                file.getAbsolutePath());
+        builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        process = builder.start();
+        out = new BufferedOutputStream(process.getOutputStream(), 1 << 16);
+    }
+
+    /**
+     * Looks for an ffmpeg binary, first in the {@value #FFMPEG_PROPERTY} system property and then
+     * on the PATH.
+     *
+     * @return the path of the binary, or {@code null} if none was found
+     */
+    public static String findExecutable() {
+        String configured = System.getProperty(FFMPEG_PROPERTY);
+        if (configured != null && new File(configured).canExecute()) {
+            return configured;
+        }
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String dir : path.split(File.pathSeparator)) {
+            for (String name : new String[] {"ffmpeg", "ffmpeg.exe"}) {
+                File candidate = new File(dir, name);
+                if (candidate.isFile() && candidate.canExecute()) {
+                    return candidate.getAbsolutePath();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void encode(BufferedImage frame) throws IOException {
+        int[] argb = PngChunks.backingPixels(frame);
+        if (argb == null) {
+            if (scratch == null) {
+                scratch = new int[width * height];
+            }
+            argb = frame.getRGB(0, 0, width, height, scratch, 0, width);
+        }
+        for (int i = 0, b = 0; i < width * height; i++, b += 4) {
+            PngChunks.putInt(bytes, b, argb[i]);
+        }
+        out.write(bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+        try {
+            int exit = process.waitFor();
+            if (exit != 0) {
+                throw new IOException("ffmpeg exited with status " + exit);
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for ffmpeg", e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps recently rendered frames so revisiting a times table number does not render it again.
+ * <p>
+ * Frames are stored as packed ARGB pixels keyed by the {@link RenderState} they were drawn for,
+ * which covers the times table number, point count, radius, color and render mode. The cache is
+ * bounded by the memory its pixels take up rather than by a number of entries: once the budget is
+ * exceeded the least recently used frames are evicted. Hits and misses are counted, so the hit rate
+ * can be shown next to the other render metrics.
+ * </p>
+ * <p>
+ * The budget is read from the {@value #BUDGET_PROPERTY} system property, in megabytes, and defaults
+ * to {@value #DEFAULT_BUDGET_MB} MB. A budget of 0 disables the cache. The cache is thread-safe.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class FrameCache {
+
+    /**
+     * System property holding the memory budget in megabytes.
+     */
+    public static final String BUDGET_PROPERTY = "timestable.frameCache.mb";
+
+    /**
+     * The memory budget used when the property is not set.
+     */
+    public static final int DEFAULT_BUDGET_MB = 256;
+
+    /**
+     * A cached frame.
+     */
+    public static final class Frame {
+        private final int[] argb;
+        private final int width, height;
+
+        Frame(int[] argb, int width, int height) {
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+        }
+
+        /**
+         * Returns the pixels of the frame. They are shared with the cache and must not be modified.
+         *
+         * @return the image as packed ARGB pixels, row by row
+         */
+        public int[] getPixels() {
+            return argb;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        long getSizeBytes() {
+            return (long) argb.length * Integer.BYTES;
+        }
+    }
+
+    private final long budgetBytes;
+    private final LinkedHashMap<RenderState, Frame> frames = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes;
+    private long hits, misses, evictions;
+
+    /**
+     * Creates a cache with the budget from the {@value #BUDGET_PROPERTY} system property.
+     */
+    public FrameCache() {
+        this(Math.max(0, Integer.getInteger(BUDGET_PROPERTY, DEFAULT_BUDGET_MB)) * 1024L * 1024L);
+    }
+
+    /**
+     * Creates a cache with the given budget.
+     *
+     * @param budgetBytes the most memory the cached pixels may take up, in bytes
+     */
+    public FrameCache(long budgetBytes) {
+        if (budgetBytes < 0) {
+            throw new IllegalArgumentException("budget must not be negative");
+        }
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Looks up the frame rendered for a state and marks it as most recently used.
+     *
+     * @param state the state to look up
+     * @return the cached frame, or {@code null} if there is none
+     */
+    public synchronized Frame get(RenderState state) {
+        Frame frame = frames.get(state);
+        if (frame != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return frame;
+    }
+
+    /**
+     * Stores a copy of a rendered frame, evicting the least recently used frames until the cache
+     * fits its budget again. Frames larger than the whole budget are not stored.
+     *
+     * @param state the state the frame was rendered for
+     * @param argb the image as packed ARGB pixels, row by row; copied
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public synchronized void put(RenderState state, int[] argb, int width, int height) {
+        if ((long) argb.length * Integer.BYTES > budgetBytes) {
+            return;
+        }
+        Frame frame = new Frame(argb.clone(), width, height);
+        Frame replaced = frames.put(state, frame);
+        if (replaced != null) {
+            sizeBytes -= replaced.getSizeBytes();
+        }
+        sizeBytes += frame.getSizeBytes();
+
+        Iterator<Map.Entry<RenderState, Frame>> eldest = frames.entrySet().iterator();
+        while (sizeBytes > budgetBytes && eldest.hasNext()) {
+            sizeBytes -= eldest.next().getValue().getSizeBytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops all cached frames. The counters are kept.
+     */
+    public synchronized void clear() {
+        frames.clear();
+        sizeBytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getEntryCount() {
+        return frames.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+}
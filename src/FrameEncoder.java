@@ -0,0 +1,70 @@
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes a sequence of frames to an animated file.
+ * <p>
+ * Implementations stream every frame to their output as soon as it is encoded, so memory use does
+ * not depend on the length of the animation. The image passed to {@link #encode(BufferedImage)} may
+ * be reused by the caller once the call returns.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public interface FrameEncoder extends Closeable {
+
+    /**
+     * Encodes one frame and appends it to the output.
+     *
+     * @param frame the frame; all frames must have the same size
+     * @throws IOException if encoding or writing fails
+     */
+    void encode(BufferedImage frame) throws IOException;
+
+    /**
+     * Finishes the file. No frames can be encoded afterwards.
+     *
+     * @throws IOException if the file cannot be completed
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Opens an encoder chosen by the extension of the file: {@code .gif} for GIF, {@code .png} or
+     * {@code .apng} for animated PNG, and {@code .mp4}, {@code .mkv}, {@code .mov} or {@code .webm} for
+     * video through a local ffmpeg binary.
+     *
+     * @param file the file to write
+     * @param width the width of every frame
+     * @param height the height of every frame
+     * @param fps the playback rate in frames per second
+     * @return a new encoder
+     * @throws IOException if the format is not supported or the file cannot be opened
+     */
+    static FrameEncoder open(File file, int width, int height, double fps) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        switch (extension) {
+            case "gif":
+                return new GifEncoder(file, fps);
+            case "png":
+            case "apng":
+                return new ApngEncoder(file, width, height, fps);
+            case "mp4":
+            case "mkv":
+            case "mov":
+            case "webm":
+                String ffmpeg = FfmpegEncoder.findExecutable();
+                if (ffmpeg == null) {
+                    throw new IOException("Exporting ." + extension + " needs ffmpeg on the PATH; "
+                            + "use .gif or .png instead");
+                }
+                return new FfmpegEncoder(ffmpeg, file, width, height, fps);
+            default:
+                throw new IOException("Unsupported animation format: " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Animated GIF encoder built on the GIF writer that ships with the JDK.
+ * <p>
+ * Frames are flattened onto an opaque RGB image before being written, since GIF has no partial
+ * transparency, and the animation loops forever.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class GifEncoder implements FrameEncoder {
+
+    private static final String METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+
+    private final ImageWriter writer;
+    private final ImageOutputStream out;
+    private final String delay;
+    private BufferedImage rgb;
+    private boolean first = true;
+
+    /**
+     * Creates the file and starts the GIF sequence.
+     *
+     * @param file the file to write
+     * @param fps the playback rate in frames per second
+     * @throws IOException if the file cannot be created
+     */
+    public GifEncoder(File file, double fps) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext()) {
+            throw new IOException("No GIF writer available");
+        }
+        writer = writers.next();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot replace " + file);
+        }
+        out = ImageIO.createImageOutputStream(file);
+        if (out == null) {
+            throw new IOException("Cannot open " + file);
+        }
+        writer.setOutput(out);
+        writer.prepareWriteSequence(null);
+
+        // GIF delays are in hundredths of a second
+        delay = String.valueOf(Math.max(1, Math.round(100 / fps)));
+    }
+
+    @Override
+    public void encode(BufferedImage frame) throws IOException {
+        if (rgb == null || rgb.getWidth() != frame.getWidth() || rgb.getHeight() != frame.getHeight()) {
+            rgb = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(frame, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+
+        IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(rgb), null);
+        configure(metadata);
+        writer.writeToSequence(new IIOImage(rgb, null, metadata), null);
+        first = false;
+    }
+
+    private void configure(IIOMetadata metadata) throws IIOInvalidTreeException {
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(METADATA_FORMAT);
+
+        IIOMetadataNode control = child(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "none");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", delay);
+        control.setAttribute("transparentColorIndex", "0");
+
+        if (first) {
+            IIOMetadataNode extensions = child(root, "ApplicationExtensions");
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            // Sub-block 1 followed by a loop count of 0, meaning forever
+            loop.setUserObject(new byte[] {1, 0, 0});
+            extensions.appendChild(loop);
+        }
+
+        metadata.setFromTree(METADATA_FORMAT, root);
+    }
+
+    private static IIOMetadataNode child(IIOMetadataNode root, String name) {
+        for (int i = 0; i < root.getLength(); i++) {
+            if (root.item(i).getNodeName().equalsIgnoreCase(name)) {
+                return (IIOMetadataNode) root.item(i);
+            }
+        }
+        IIOMetadataNode node = new IIOMetadataNode(name);
+        root.appendChild(node);
+        return node;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.endWriteSequence();
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+    }
+}
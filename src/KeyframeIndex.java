@@ -0,0 +1,320 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Random access into a range of times table numbers, for scrubbing the timeline.
+ * <p>
+ * A background thread renders keyframes spread evenly over the range at a reduced preview
+ * resolution, coarse to fine: every keyframe of a sparse grid first, then the grid is refined by
+ * halving its spacing, so the whole range is covered long before the index is complete.
+ * </p>
+ * <p>
+ * While the user drags the timeline the nearest finished keyframe is shown right away, and the same
+ * thread renders the exact frame for the position dragged to, ahead of any remaining keyframes.
+ * Only the newest seek is kept, so the exact frames follow the pointer as fast as they can be drawn
+ * and the FX thread never draws chords while scrubbing, however many points there are.
+ * </p>
+ * <p>
+ * Stacked layers do not follow the timeline, so every frame shows the stack the index was built
+ * with on top of its chords.
+ * </p>
+ * <p>
+ * Mapping the chords of a frame costs a fraction of a millisecond even at 50,000 points; drawing
+ * them costs tens of milliseconds. The index therefore stores drawn keyframes rather than mapped
+ * chords. The memory they take up is bounded by the {@value #BUDGET_PROPERTY} system property, in
+ * megabytes, which decides how many keyframes fit in the range.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class KeyframeIndex implements Closeable {
+
+    /**
+     * System property holding the memory budget of the keyframes in megabytes.
+     */
+    public static final String BUDGET_PROPERTY = "timestable.keyframes.mb";
+
+    /**
+     * The memory budget used when the property is not set.
+     */
+    public static final int DEFAULT_BUDGET_MB = 64;
+
+    /**
+     * Keyframes and seek frames are rendered at 1/SCALE of the canvas size in each direction.
+     */
+    public static final int SCALE = 2;
+
+    private static final int MIN_KEYFRAMES = 2;
+    private static final int MAX_KEYFRAMES = 512;
+    private static final int SEEK_BUFFERS = 3;
+    private static final Color TRANSPARENT = new Color(0, 0, 0, 0);
+
+    /**
+     * A frame rendered by the index.
+     */
+    public static final class Frame {
+        private final BufferedImage image;
+        private final int[] argb;
+        private double timesTableNumber;
+
+        Frame(int width, int height) {
+            this.image = ChordRasterizer.createImage(width, height);
+            this.argb = PngChunks.backingPixels(image);
+        }
+
+        public double getTimesTableNumber() {
+            return timesTableNumber;
+        }
+
+        /**
+         * Returns the pixels of the frame. They are owned by the index and must not be modified.
+         *
+         * @return the image as packed ARGB pixels, row by row
+         */
+        public int[] getPixels() {
+            return argb;
+        }
+
+        public int getWidth() {
+            return image.getWidth();
+        }
+
+        public int getHeight() {
+            return image.getHeight();
+        }
+    }
+
+    private final int numPoints;
+    private final long from, to;
+    private final Color color;
+    private final int width, height;
+    private final ChordGeometry geometry;
+    // Aliased: anti-aliasing 50,000 overlapping chords takes seconds per frame instead of milliseconds
+    private final ChordRasterizer rasterizer = new ChordRasterizer(TRANSPARENT, false);
+    private final ChordBuffer chords = new ChordBuffer();
+    private final Layer[] layers;
+    private final LayerBatch layerBatch;
+    private final AtomicReferenceArray<Frame> keyframes;
+
+    // Seeks, handed over like the frames of a ChordWorker: one ready, one displayed, one being drawn
+    private final AtomicReference<Double> pendingSeek = new AtomicReference<>();
+    private final AtomicReference<Frame> readySeek = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<Frame> freeSeeks = new ConcurrentLinkedQueue<>();
+    private Frame displayedSeek;
+
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile int builtCount;
+
+    /**
+     * Creates an index of a range and starts building it in the background.
+     *
+     * @param numPoints the number of points on the circle
+     * @param from the first times table number of the range
+     * @param to the last times table number of the range, greater than {@code from}
+     * @param canvasWidth the width of the canvas the frames are shown on, in pixels
+     * @param canvasHeight the height of the canvas the frames are shown on, in pixels
+     * @param radius the radius of the circle on the canvas
+     * @param color the color of the chords
+     * @param layers the layers stacked on top of the chords, bottom first; must not be modified afterwards
+     */
+    public KeyframeIndex(int numPoints, double from, double to, int canvasWidth, int canvasHeight,
+            double radius, Color color, Layer[] layers) {
+        if (!(to > from)) {
+            throw new IllegalArgumentException("the range must not be empty");
+        }
+        this.numPoints = numPoints;
+        this.from = FixedTtn.fromDouble(from);
+        this.to = FixedTtn.fromDouble(to);
+        this.color = color;
+        this.width = Math.max(1, canvasWidth / SCALE);
+        this.height = Math.max(1, canvasHeight / SCALE);
+        this.geometry = ChordGeometry.forCircle(radius / SCALE, numPoints, canvasWidth / 2.0 / SCALE,
+                canvasHeight / 2.0 / SCALE);
+        this.layers = layers;
+        this.layerBatch = new LayerBatch(canvasWidth / 2.0 / SCALE, canvasHeight / 2.0 / SCALE, 1.0 / SCALE);
+
+        long frameBytes = (long) width * height * Integer.BYTES;
+        long budget = Math.max(0, Integer.getInteger(BUDGET_PROPERTY, DEFAULT_BUDGET_MB)) * 1024L * 1024L;
+        int count = (int) Math.max(MIN_KEYFRAMES, Math.min(MAX_KEYFRAMES, budget / frameBytes));
+        this.keyframes = new AtomicReferenceArray<>(count);
+        for (int i = 0; i < SEEK_BUFFERS; i++) {
+            freeSeeks.add(new Frame(width, height));
+        }
+
+        thread = new Thread(this::loop, "keyframe-index");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Tells whether the index was built for the given range and style, so it can be reused.
+     *
+     * @param numPoints the number of points on the circle
+     * @param from the first times table number of the range
+     * @param to the last times table number of the range
+     * @param color the color of the chords
+     * @param layers the layers stacked on top of the chords
+     * @return {@code true} if the index shows the same frames
+     */
+    public boolean matches(int numPoints, double from, double to, Color color, Layer[] layers) {
+        return this.numPoints == numPoints && this.from == FixedTtn.fromDouble(from)
+                && this.to == FixedTtn.fromDouble(to) && this.color.equals(color)
+                && Arrays.equals(this.layers, layers);
+    }
+
+    /**
+     * Returns the finished keyframe closest to a times table number.
+     *
+     * @param ttn the times table number
+     * @return the nearest keyframe, or {@code null} if none is finished yet
+     */
+    public Frame nearest(double ttn) {
+        int count = keyframes.length();
+        double position = (FixedTtn.fromDouble(ttn) - from) / (double) (to - from) * (count - 1);
+        int slot = (int) Math.max(0, Math.min(count - 1, Math.round(position)));
+        for (int distance = 0; distance < count; distance++) {
+            if (slot - distance >= 0 && keyframes.get(slot - distance) != null) {
+                return keyframes.get(slot - distance);
+            }
+            if (slot + distance < count && keyframes.get(slot + distance) != null) {
+                return keyframes.get(slot + distance);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Asks for the exact frame of a times table number, replacing any seek not started yet. The
+     * frame can be picked up with {@link #pollSeek()} once it is rendered.
+     *
+     * @param ttn the times table number
+     */
+    public void seek(double ttn) {
+        pendingSeek.set(ttn);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Takes the most recently rendered seek frame, if there is one. The frame stays valid until the
+     * next successful poll. Must only be called from one thread, normally the FX thread.
+     *
+     * @return the new frame, or {@code null} if no seek finished since the last poll
+     */
+    public Frame pollSeek() {
+        Frame frame = readySeek.getAndSet(null);
+        if (frame == null) {
+            return null;
+        }
+        if (displayedSeek != null) {
+            freeSeeks.add(displayedSeek);
+        }
+        displayedSeek = frame;
+        return frame;
+    }
+
+    /**
+     * Drops the pending seek and any seek frame not picked up yet, for when scrubbing ends.
+     */
+    public void cancelSeek() {
+        pendingSeek.set(null);
+        Frame stale = readySeek.getAndSet(null);
+        if (stale != null) {
+            freeSeeks.add(stale);
+        }
+    }
+
+    public int getKeyframeCount() {
+        return keyframes.length();
+    }
+
+    /**
+     * Returns how many keyframes are finished.
+     *
+     * @return the number of finished keyframes
+     */
+    public int getBuiltCount() {
+        return builtCount;
+    }
+
+    /**
+     * Stops building the index. Finished keyframes stay available.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void loop() {
+        int count = keyframes.length();
+        int stride = Integer.highestOneBit(count - 1) << 1;
+        int slot = 0;
+        layerBatch.map(layers);
+        while (!closed) {
+            Double seek = pendingSeek.getAndSet(null);
+            if (seek != null) {
+                renderSeek(seek);
+                continue;
+            }
+            if (stride == 0) {
+                // Every keyframe is built, only seeks are left to serve
+                LockSupport.park(this);
+                continue;
+            }
+
+            // Coarse to fine: every stride-th slot, halving the stride once a pass is done
+            if (keyframes.get(slot) == null) {
+                Frame frame = new Frame(width, height);
+                render(keyframeTtn(slot), frame);
+                keyframes.set(slot, frame);
+                builtCount++;
+            }
+            slot += stride;
+            if (slot >= count) {
+                stride /= 2;
+                slot = 0;
+            }
+        }
+    }
+
+    private void renderSeek(double ttn) {
+        Frame frame = freeSeeks.poll();
+        if (frame == null) {
+            // Only possible if the FX thread holds on to frames it did not poll through us
+            frame = new Frame(width, height);
+        }
+        render(FixedTtn.fromDouble(ttn), frame);
+        Frame stale = readySeek.getAndSet(frame);
+        if (stale != null) {
+            freeSeeks.add(stale);
+        }
+    }
+
+    private long keyframeTtn(int slot) {
+        int count = keyframes.length();
+        return from + Math.round((to - from) * (double) slot / (count - 1));
+    }
+
+    private void render(long ttn, Frame frame) {
+        geometry.mapFixed(ttn, chords);
+        rasterizer.render(chords, color, frame.image);
+        if (layerBatch.getCount() > 0) {
+            Graphics2D g = frame.image.createGraphics();
+            try {
+                rasterizer.drawLayers(layerBatch, g);
+            } finally {
+                g.dispose();
+            }
+        }
+        frame.timesTableNumber = FixedTtn.toDouble(ttn);
+    }
+}
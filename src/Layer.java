@@ -0,0 +1,120 @@
+import java.util.Objects;
+
+import javafx.scene.paint.Color;
+
+/**
+ * One times table stacked on top of the main visualization.
+ * <p>
+ * Every layer has its own times table number, point count, radius, color and animation step. A
+ * layer is an immutable value: advancing the animation returns a new layer, so a stack of layers can
+ * be handed to the {@link ChordWorker} while the FX thread moves on. The times table number is kept
+ * in {@link FixedTtn} millionths, like the main visualization, so layers never drift apart.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class Layer {
+
+    private final long timesTableNumber;
+    private final int numPoints;
+    private final double radius;
+    private final Color color;
+    private final long step;
+
+    /**
+     * Constructs a layer.
+     *
+     * @param timesTableNumber the times table number
+     * @param numPoints the number of points on the circle
+     * @param radius the radius of the circle
+     * @param color the color of the chords
+     * @param step the amount the times table number grows by every animation step
+     */
+    public Layer(double timesTableNumber, int numPoints, double radius, Color color, double step) {
+        this(FixedTtn.fromDouble(timesTableNumber), numPoints, radius, color, FixedTtn.fromDouble(step));
+    }
+
+    private Layer(long timesTableNumber, int numPoints, double radius, Color color, long step) {
+        if (numPoints < 0 || !(radius > 0)) {
+            throw new IllegalArgumentException("a layer needs a positive radius and no negative point count");
+        }
+        this.timesTableNumber = timesTableNumber;
+        this.numPoints = numPoints;
+        this.radius = radius;
+        this.color = color;
+        this.step = step;
+    }
+
+    /**
+     * Returns the layer one animation step later.
+     *
+     * @return a layer whose times table number is larger by the step
+     */
+    public Layer advanced() {
+        return new Layer(timesTableNumber + step, numPoints, radius, color, step);
+    }
+
+    /**
+     * Advances every layer of a stack by one animation step.
+     *
+     * @param layers the layers to advance
+     * @return a new array with the advanced layers, in the same order; an empty stack is returned as is
+     */
+    public static Layer[] advanceAll(Layer[] layers) {
+        if (layers.length == 0) {
+            return layers;
+        }
+        Layer[] advanced = new Layer[layers.length];
+        for (int i = 0; i < layers.length; i++) {
+            advanced[i] = layers[i].advanced();
+        }
+        return advanced;
+    }
+
+    public double getTimesTableNumber() {
+        return FixedTtn.toDouble(timesTableNumber);
+    }
+
+    /**
+     * Returns the times table number in millionths, see {@link FixedTtn}.
+     *
+     * @return the fixed-point times table number
+     */
+    public long getFixedTimesTableNumber() {
+        return timesTableNumber;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public double getStep() {
+        return FixedTtn.toDouble(step);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Layer)) {
+            return false;
+        }
+        Layer layer = (Layer) other;
+        return timesTableNumber == layer.timesTableNumber && numPoints == layer.numPoints
+                && Double.compare(radius, layer.radius) == 0 && color.equals(layer.color) && step == layer.step;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timesTableNumber, numPoints, radius, color, step);
+    }
+}
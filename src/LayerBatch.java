@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * The chords of a stack of {@link Layer}s, mapped together into one flat list of endpoints.
+ * <p>
+ * Every layer goes through the same geometry engine as the main visualization: its cached
+ * {@link ChordGeometry} maps the chords and the {@link ChordKernel} gathers their endpoints. The
+ * endpoints of all layers are then laid end to end in shared coordinate arrays, with the index where
+ * each layer ends, so a renderer draws the whole stack in one pass over one list and only has to
+ * switch colors at layer boundaries. The arrays only grow, so mapping the same stack frame after
+ * frame produces no garbage and the cost follows the total number of chords, not the number of
+ * layers.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class LayerBatch {
+
+    private static final Layer[] NO_LAYERS = new Layer[0];
+    private static final float[] NO_COORDINATES = new float[0];
+
+    private final double centerX, centerY;
+    private final double scale;
+    private final ChordBuffer scratch = new ChordBuffer();
+    private Layer[] layers = NO_LAYERS;
+    // The circle of every layer slot, kept here because a deep stack can outgrow the shared cache
+    private ChordGeometry[] geometries = new ChordGeometry[0];
+    private int[] layerEnds = new int[0];
+    private float[] x0 = NO_COORDINATES, y0 = NO_COORDINATES, x1 = NO_COORDINATES, y1 = NO_COORDINATES;
+    private int count;
+
+    /**
+     * Constructs an empty batch for circles around a common center.
+     *
+     * @param centerX the x-coordinate of the centre of every layer's circle
+     * @param centerY the y-coordinate of the centre of every layer's circle
+     */
+    public LayerBatch(double centerX, double centerY) {
+        this(centerX, centerY, 1);
+    }
+
+    /**
+     * Constructs an empty batch for circles around a common center, drawn at another size than the
+     * canvas the layers were made for.
+     *
+     * @param centerX the x-coordinate of the centre of every layer's circle
+     * @param centerY the y-coordinate of the centre of every layer's circle
+     * @param scale the factor every layer's radius is multiplied by
+     */
+    public LayerBatch(double centerX, double centerY, double scale) {
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.scale = scale;
+    }
+
+    /**
+     * Maps the chords of every layer, replacing the previous contents of the batch.
+     *
+     * @param stack the layers, bottom first
+     * @return this batch
+     */
+    public LayerBatch map(Layer[] stack) {
+        this.layers = stack;
+        this.count = 0;
+        if (layerEnds.length < stack.length) {
+            layerEnds = new int[stack.length];
+            geometries = Arrays.copyOf(geometries, stack.length);
+        }
+
+        for (int l = 0; l < stack.length; l++) {
+            Layer layer = stack[l];
+            ChordGeometry geometry = geometries[l];
+            double radius = layer.getRadius() * scale;
+            if (geometry == null || geometry.getNumPoints() != layer.getNumPoints()
+                    || geometry.getRadius() != radius) {
+                geometry = ChordGeometry.forCircle(radius, layer.getNumPoints(), centerX, centerY);
+                geometries[l] = geometry;
+            }
+            geometry.mapFixed(layer.getFixedTimesTableNumber(), scratch).gatherEndpoints();
+
+            int chords = scratch.getCount();
+            ensureCapacity(count + chords);
+            for (int c = 0; c < chords; c++) {
+                x0[count + c] = scratch.getX0(c);
+                y0[count + c] = scratch.getY0(c);
+                x1[count + c] = scratch.getX1(c);
+                y1[count + c] = scratch.getY1(c);
+            }
+            count += chords;
+            layerEnds[l] = count;
+        }
+        return this;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (x0.length < capacity) {
+            int grown = Math.max(capacity, x0.length + (x0.length >> 1));
+            x0 = Arrays.copyOf(x0, grown);
+            y0 = Arrays.copyOf(y0, grown);
+            x1 = Arrays.copyOf(x1, grown);
+            y1 = Arrays.copyOf(y1, grown);
+        }
+    }
+
+    /**
+     * Returns the layers the batch was last mapped for.
+     *
+     * @return the layers, bottom first; must not be modified
+     */
+    public Layer[] getLayers() {
+        return layers;
+    }
+
+    public int getLayerCount() {
+        return layers.length;
+    }
+
+    /**
+     * Returns the index one past the last chord of a layer; the chords of layer {@code l} run from
+     * {@code getLayerEnd(l - 1)}, or 0 for the first layer, up to this index.
+     *
+     * @param l the index of the layer
+     * @return the end of the layer's chords
+     */
+    public int getLayerEnd(int l) {
+        return layerEnds[l];
+    }
+
+    /**
+     * Returns the number of chords of all layers together.
+     *
+     * @return the chord count
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public float getX0(int c) {
+        return x0[c];
+    }
+
+    public float getY0(int c) {
+        return y0[c];
+    }
+
+    public float getX1(int c) {
+        return x1[c];
+    }
+
+    public float getY1(int c) {
+        return y1[c];
+    }
+}
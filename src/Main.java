@@ -1,11 +1,16 @@
 import javafx.animation.AnimationTimer;
 import javafx.animation.FadeTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.control.*;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.*;
@@ -15,11 +20,17 @@ import javafx.scene.Group;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 import javax.imageio.ImageIO;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Main application class for the Modulo Times Table Visualization.
@@ -49,6 +60,57 @@ public class Main extends Application {
     // Theme manager
     private ThemeManager themeManager = new ThemeManager();
 
+    // Active animation recording, null when not recording
+    private AnimationRecorder recorder;
+
+    // What is currently on screen, used to skip or shrink redundant updates
+    private RenderState renderState;
+    private Group currentLines;
+    private final FadeTransition fade = new FadeTransition(Duration.millis(200));
+    private boolean fadeNextFrame;
+
+    // Render loop instrumentation, shown in the performance overlay and published over JMX
+    private final RenderMetrics metrics = new RenderMetrics();
+    private static final long METRICS_INTERVAL_NANOS = 250_000_000L;
+    private long layoutPulseStart;
+
+    // Maps chords off the FX thread; finished frames are picked up by the animation timer
+    private final ChordWorker chordWorker = new ChordWorker(metrics, (int) WIDTH, (int) HEIGHT);
+
+    // Draws decimated previews while keys or the timeline ask for frames faster than they can be drawn
+    private final DetailPolicy detail = new DetailPolicy();
+    private int requestedStride = 1;
+
+    // Cycles, cusps, symmetry and chord lengths of the pattern on screen, worked out in the background
+    private final PatternAnalyzer patternAnalyzer = new PatternAnalyzer();
+
+    // Tone-maps the coverage the chord worker accumulates, created the first time the DENSITY render
+    // mode is used
+    private DensityRenderer densityRenderer;
+    private DensityRenderer.ToneMap toneMap = DensityRenderer.ToneMap.LOG;
+
+    // Mesh rendering, created the first time the MESH render mode is used
+    private ChordMesh chordMesh;
+
+    // Recently shown canvas and density frames, recalled when a preset, key or scrub revisits them
+    private final FrameCache frameCache = new FrameCache();
+    private WritableImage cacheSnapshot;
+    private int[] cachePixels;
+    private boolean presentedFromCache;
+
+    // Timeline scrubbing, shown from keyframes and seek frames rendered by a KeyframeIndex
+    private Slider timelineSlider;
+    private KeyframeIndex keyframeIndex;
+    private WritableImage scrubImage;
+    private boolean scrubbing;
+    private boolean syncingTimeline;
+    private double scrubShownTtn = Double.NaN;
+
+    // Times tables stacked on top of the main one, mapped and drawn together with it
+    private Layer[] layers = NO_LAYERS;
+    private static final Layer[] NO_LAYERS = new Layer[0];
+    private static final DecimalFormat TTN_FORMAT = new DecimalFormat("#.0");
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         primaryStage.setTitle("Modulo Times Table Visualization");
@@ -68,6 +130,15 @@ public class Main extends Application {
         Pane canvasPane = new Pane();
         Canvas canvas = new Canvas(WIDTH, HEIGHT);
         canvasPane.getChildren().addAll(canvas, circle);
+
+        // Performance overlay, toggled with F
+        Label hudLabel = new Label();
+        hudLabel.setStyle("-fx-font-family: monospace; -fx-font-size: 12px; -fx-text-fill: white; "
+                + "-fx-background-color: rgba(0, 0, 0, 0.65); -fx-padding: 6 10; -fx-background-radius: 4;");
+        hudLabel.relocate(10, 10);
+        hudLabel.setMouseTransparent(true);
+        hudLabel.setVisible(false);
+        canvasPane.getChildren().add(hudLabel);
         root.setCenter(canvasPane);
 
         // Control panel (right sidebar) - wrapped in ScrollPane
@@ -81,6 +152,10 @@ public class Main extends Application {
 
         // Create scene
         Scene scene = new Scene(root, WIDTH + 350, HEIGHT);
+        scene.addPreLayoutPulseListener(() -> layoutPulseStart = System.nanoTime());
+        scene.addPostLayoutPulseListener(() ->
+                metrics.recordStage(RenderMetrics.Stage.SYNC, System.nanoTime() - layoutPulseStart));
+        metrics.registerMBean();
         primaryStage.setScene(scene);
         primaryStage.show();
 
@@ -97,9 +172,15 @@ public class Main extends Application {
         Label formulaLabel = new Label("n × 2.0 mod 360");
         formulaLabel.setStyle(themeManager.getLabelStyle() + " -fx-font-family: monospace;");
 
+        Label analysisLabel = new Label();
+        analysisLabel.setStyle(themeManager.getLabelStyle() + " -fx-font-family: monospace;");
+
         Label statusLabel = new Label("● Stopped");
         statusLabel.setStyle("-fx-text-fill: #e74c3c; -fx-font-size: 14px; -fx-font-weight: bold;");
 
+        Label droppedLabel = new Label("Dropped frames: 0");
+        droppedLabel.setStyle(themeManager.getLabelStyle());
+
         // Sliders with value labels
         Slider stepNumSlider = new Slider(0.01, 5, 0.1);
         Label stepValueLabel = new Label("0.1");
@@ -118,6 +199,39 @@ public class Main extends Application {
         ColorPicker colorPicker = new ColorPicker(Color.RED);
         colorPicker.setPrefWidth(150);
 
+        ComboBox<Visualization.RenderMode> renderModeBox = new ComboBox<>();
+        // Modes the graphics pipeline cannot show, such as MESH on the software pipeline, are left out
+        for (Visualization.RenderMode mode : Visualization.RenderMode.values()) {
+            if (mode.isSupported()) {
+                renderModeBox.getItems().add(mode);
+            }
+        }
+        renderModeBox.setValue(visualization.getRenderMode());
+        renderModeBox.setPrefWidth(150);
+
+        ComboBox<DensityRenderer.ToneMap> toneMapBox = new ComboBox<>();
+        toneMapBox.getItems().addAll(DensityRenderer.ToneMap.values());
+        toneMapBox.setValue(toneMap);
+        toneMapBox.setPrefWidth(150);
+        toneMapBox.setDisable(visualization.getRenderMode() != Visualization.RenderMode.DENSITY);
+
+        timelineSlider = new Slider(0, 100, ittn);
+        timelineSlider.setPrefWidth(300);
+        // Leave the arrow keys to the keyboard shortcuts
+        timelineSlider.setFocusTraversable(false);
+
+        TextField timelineFromTF = new TextField("0");
+        timelineFromTF.setTextFormatter(DecimalTextVerifier.getFormatter());
+        timelineFromTF.setPrefWidth(70);
+
+        TextField timelineToTF = new TextField("100");
+        timelineToTF.setTextFormatter(DecimalTextVerifier.getFormatter());
+        timelineToTF.setPrefWidth(70);
+
+        TextField layerRadiusTF = new TextField(String.valueOf(RADIUS));
+        layerRadiusTF.setTextFormatter(DecimalTextVerifier.getFormatter());
+        layerRadiusTF.setPrefWidth(100);
+
         CheckBox showCircleCheckBox = new CheckBox("Show Circle");
         showCircleCheckBox.setSelected(true);
         showCircleCheckBox.setStyle(themeManager.getLabelStyle());
@@ -128,8 +242,13 @@ public class Main extends Application {
         Button stopBtn = new Button("⏹ Stop");
         Button resetBtn = new Button("↻ Reset");
         Button saveImageBtn = new Button("💾 Save Image");
+        Button recordBtn = new Button("⏺ Record Animation");
+        Button exportHighResBtn = new Button("🖼 Export High-Res");
+        Button exportVectorBtn = new Button("📐 Export Vector");
         Button darkModeBtn = new Button("🌙 Dark Mode");
         Button jumpToBtn = new Button("Jump");
+        Button addLayerBtn = new Button("➕ Add Layer");
+        Button clearLayersBtn = new Button("✖ Clear Layers");
 
         // Apply button styles
         applyButtonStyle(playBtn, "success");
@@ -137,8 +256,13 @@ public class Main extends Application {
         applyButtonStyle(stopBtn, "danger");
         applyButtonStyle(resetBtn, "default");
         applyButtonStyle(saveImageBtn, "primary");
+        applyButtonStyle(recordBtn, "danger");
+        applyButtonStyle(exportHighResBtn, "primary");
+        applyButtonStyle(exportVectorBtn, "primary");
         applyButtonStyle(darkModeBtn, "default");
         applyButtonStyle(jumpToBtn, "primary");
+        applyButtonStyle(addLayerBtn, "primary");
+        applyButtonStyle(clearLayersBtn, "default");
 
         // Preset buttons
         VBox presetsBox = new VBox(8);
@@ -156,13 +280,55 @@ public class Main extends Application {
                 visualization.setTimesTableNum(preset.getTimesTableNumber());
                 numPointsTF.setText(String.valueOf(preset.getNumPoints()));
                 ttnJTF.setText(String.format("%.1f", preset.getTimesTableNumber()));
-                updateVisualization(canvasPane, visualization, numPointsTF, colorPicker,
+                updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
                         ttnValueLabel, patternNameLabel, formulaLabel, true);
             });
 
             presetsBox.getChildren().add(presetBtn);
         }
 
+        // Every preset in the library, the saved ones included, in times table number order
+        ComboBox<PresetPatterns.Pattern> libraryBox = new ComboBox<>();
+        libraryBox.setPromptText("Preset Library");
+        libraryBox.setPrefWidth(200);
+        libraryBox.setVisibleRowCount(15);
+        libraryBox.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(PresetPatterns.Pattern preset) {
+                return preset == null ? ""
+                        : String.format("%s (%.4f)", preset.getName(), preset.getTimesTableNumber());
+            }
+
+            @Override
+            public PresetPatterns.Pattern fromString(String text) {
+                return null;
+            }
+        });
+        refreshLibrary(libraryBox);
+        libraryBox.setOnAction(e -> {
+            PresetPatterns.Pattern preset = libraryBox.getValue();
+            if (preset == null) {
+                return;
+            }
+            visualization.setTimesTableNum(preset.getTimesTableNumber());
+            numPointsTF.setText(String.valueOf(preset.getNumPoints()));
+            ttnJTF.setText(String.format("%.5f", preset.getTimesTableNumber()));
+            updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                    ttnValueLabel, patternNameLabel, formulaLabel, true);
+        });
+
+        Button savePresetBtn = new Button("☆ Save Preset");
+        savePresetBtn.setPrefWidth(200);
+        applyButtonStyle(savePresetBtn, "primary");
+        savePresetBtn.setOnAction(e -> savePreset(visualization.getTimesTableNumber(), numPointsTF));
+        presetsBox.getChildren().addAll(libraryBox, savePresetBtn);
+
+        // Edits to the preset file, made here or in an editor, show up without a restart
+        PresetLibrary.getDefault().addListener(() -> Platform.runLater(() -> {
+            refreshLibrary(libraryBox);
+            updateLabels(visualization, numPointsTF, ttnValueLabel, patternNameLabel, formulaLabel);
+        }));
+
         // Build control panel
         controlPanel.getChildren().clear();
 
@@ -170,7 +336,7 @@ public class Main extends Application {
         VBox titleBox = new VBox(5);
         Label title = new Label("Controls");
         title.setStyle(themeManager.getTitleStyle() + " -fx-font-size: 22px;");
-        titleBox.getChildren().addAll(title, new Separator(), statusLabel);
+        titleBox.getChildren().addAll(title, new Separator(), statusLabel, droppedLabel);
 
         // Current TTN display
         VBox ttnDisplayBox = new VBox(5);
@@ -179,7 +345,20 @@ public class Main extends Application {
         HBox ttnValueBox = new HBox(10);
         ttnValueBox.setAlignment(Pos.CENTER_LEFT);
         ttnValueBox.getChildren().addAll(ttnValueLabel, patternNameLabel);
-        ttnDisplayBox.getChildren().addAll(ttnLabel, ttnValueBox, formulaLabel);
+        ttnDisplayBox.getChildren().addAll(ttnLabel, ttnValueBox, formulaLabel, analysisLabel);
+
+        // Timeline
+        VBox timelineBox = new VBox(8);
+        Label timelineLabel = new Label("Timeline");
+        timelineLabel.setStyle(themeManager.getTitleStyle());
+        HBox timelineRangeBox = new HBox(8);
+        timelineRangeBox.setAlignment(Pos.CENTER_LEFT);
+        Label timelineFromLabel = new Label("From:");
+        timelineFromLabel.setStyle(themeManager.getLabelStyle());
+        Label timelineToLabel = new Label("To:");
+        timelineToLabel.setStyle(themeManager.getLabelStyle());
+        timelineRangeBox.getChildren().addAll(timelineFromLabel, timelineFromTF, timelineToLabel, timelineToTF);
+        timelineBox.getChildren().addAll(timelineLabel, timelineSlider, timelineRangeBox);
 
         // Playback controls
         VBox playbackBox = new VBox(8);
@@ -244,13 +423,42 @@ public class Main extends Application {
         colorLabel.setStyle(themeManager.getLabelStyle());
         colorBox.getChildren().addAll(colorLabel, colorPicker);
 
-        appearanceBox.getChildren().addAll(appearanceLabel, colorBox, showCircleCheckBox, darkModeBtn);
+        HBox rendererBox = new HBox(8);
+        rendererBox.setAlignment(Pos.CENTER_LEFT);
+        Label rendererLabel = new Label("Renderer:");
+        rendererLabel.setStyle(themeManager.getLabelStyle());
+        rendererBox.getChildren().addAll(rendererLabel, renderModeBox);
+
+        HBox toneMapHBox = new HBox(8);
+        toneMapHBox.setAlignment(Pos.CENTER_LEFT);
+        Label toneMapLabel = new Label("Density:");
+        toneMapLabel.setStyle(themeManager.getLabelStyle());
+        toneMapHBox.getChildren().addAll(toneMapLabel, toneMapBox);
+
+        appearanceBox.getChildren().addAll(appearanceLabel, colorBox, rendererBox, toneMapHBox, showCircleCheckBox,
+                darkModeBtn);
+
+        // Layers
+        VBox layersBox = new VBox(8);
+        Label layersLabel = new Label("Layers");
+        layersLabel.setStyle(themeManager.getTitleStyle());
+        HBox layerRadiusBox = new HBox(8);
+        layerRadiusBox.setAlignment(Pos.CENTER_LEFT);
+        Label layerRadiusLabel = new Label("Radius:");
+        layerRadiusLabel.setStyle(themeManager.getLabelStyle());
+        layerRadiusBox.getChildren().addAll(layerRadiusLabel, layerRadiusTF);
+        HBox layerButtonRow = new HBox(8);
+        layerButtonRow.getChildren().addAll(addLayerBtn, clearLayersBtn);
+        Label layerCountLabel = new Label("Stacked layers: 0");
+        layerCountLabel.setStyle(themeManager.getLabelStyle());
+        layersBox.getChildren().addAll(layersLabel, layerRadiusBox, layerButtonRow, layerCountLabel);
 
         // Actions
         VBox actionsBox = new VBox(8);
         Label actionsLabel = new Label("Actions");
         actionsLabel.setStyle(themeManager.getTitleStyle());
-        actionsBox.getChildren().addAll(actionsLabel, saveImageBtn);
+        actionsBox.getChildren().addAll(actionsLabel, saveImageBtn, exportHighResBtn, exportVectorBtn,
+                recordBtn);
 
         // Add all sections to control panel
         controlPanel.getChildren().addAll(
@@ -258,6 +466,8 @@ public class Main extends Application {
                 new Separator(),
                 ttnDisplayBox,
                 new Separator(),
+                timelineBox,
+                new Separator(),
                 playbackBox,
                 new Separator(),
                 speedBox,
@@ -266,6 +476,8 @@ public class Main extends Application {
                 new Separator(),
                 appearanceBox,
                 new Separator(),
+                layersBox,
+                new Separator(),
                 presetsBox,
                 new Separator(),
                 actionsBox);
@@ -282,11 +494,25 @@ public class Main extends Application {
         // Color picker updates
         colorPicker.setOnAction(e -> {
             if (animationState == AnimationState.STOPPED || animationState == AnimationState.PAUSED) {
-                updateVisualization(canvasPane, visualization, numPointsTF, colorPicker,
+                updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
                         ttnValueLabel, patternNameLabel, formulaLabel, true);
             }
         });
 
+        // Render mode switch
+        renderModeBox.setOnAction(e -> {
+            visualization.setRenderMode(renderModeBox.getValue());
+            toneMapBox.setDisable(renderModeBox.getValue() != Visualization.RenderMode.DENSITY);
+            updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                    ttnValueLabel, patternNameLabel, formulaLabel, true);
+        });
+
+        toneMapBox.setOnAction(e -> {
+            toneMap = toneMapBox.getValue();
+            updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                    ttnValueLabel, patternNameLabel, formulaLabel, false);
+        });
+
         // Show/hide circle
         showCircleCheckBox.setOnAction(e -> {
             circle.setVisible(showCircleCheckBox.isSelected());
@@ -294,26 +520,106 @@ public class Main extends Application {
 
         // Animation Timer
         class TTAnimationTimer extends AnimationTimer {
-            private long lastUpdate = 0;
+            private final AnimationClock clock = new AnimationClock();
+            private long shownDroppedFrames;
+            private long lastMetricsSnapshot;
 
             public void run(boolean jumpTo) {
-                updateVisualization(canvasPane, visualization, numPointsTF, colorPicker,
+                updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
                         ttnValueLabel, patternNameLabel, formulaLabel, jumpTo);
+                record();
 
                 if (!jumpTo) {
                     visualization.incrementTTN(stepNumSlider.getValue());
+                    layers = Layer.advanceAll(layers);
+                }
+            }
+
+            private void record() {
+                if (recorder == null || numPointsTF.getText().isEmpty()) {
+                    return;
                 }
+                int numPoints;
+                try {
+                    numPoints = (int) Double.parseDouble(numPointsTF.getText());
+                } catch (NumberFormatException ex) {
+                    // Skipped until the field holds a number again
+                    return;
+                }
+                recorder.offer(visualization.getTimesTableNumber(), numPoints,
+                        toAwtColor(colorPicker.getValue()),
+                        java.awt.Color.decode(themeManager.getBackgroundColor()),
+                        circle.isVisible() ? toAwtColor(themeManager.getCircleColor()) : null, layers);
+            }
+
+            /**
+             * Restarts the simulation clock so that time spent paused or stopped is not caught up.
+             */
+            public void resetClock() {
+                clock.reset();
             }
 
             @Override
             public void handle(long current) {
-                if (animationState == AnimationState.RUNNING) {
-                    long delay = (long) (delaySlider.getValue() * 1_000_000_000);
-                    if (current - lastUpdate >= delay) {
-                        if (!numPointsTF.getText().isEmpty()) {
-                            run(false);
-                            lastUpdate = current;
+                metrics.recordPulse(current);
+                detail.recordPulse(current);
+
+                // Show the latest frame the worker finished, if any
+                ChordBuffer frame = chordWorker.poll();
+                if (frame != null) {
+                    presentFrame(canvasPane, canvas, frame);
+                }
+
+                // Once input settles, refine the preview on screen step by step up to the full frame
+                ChordBuffer shown = chordWorker.getDisplayed();
+                if (requestedStride > 1 && shown != null && renderState != null && shown.getStride() == requestedStride
+                        && shown.getTimesTableNumber() == renderState.getTimesTableNumber()
+                        && !detail.isInteracting(System.nanoTime())) {
+                    requestedStride = DetailPolicy.refine(requestedStride);
+                    chordWorker.request(visualization.getGeometry(renderState.getNumPoints()),
+                            renderState.getTimesTableNumber(), renderState.getLayers(), requestedStride,
+                            renderState.getRenderMode() == Visualization.RenderMode.DENSITY);
+                }
+
+                PatternAnalysis analysis = patternAnalyzer.poll();
+                if (analysis != null) {
+                    analysisLabel.setText(analysis.format());
+                }
+
+                // While scrubbing, show the exact frame of the timeline position once it is drawn
+                if (scrubbing) {
+                    KeyframeIndex.Frame seek = keyframeIndex.pollSeek();
+                    if (seek != null) {
+                        showScrubFrame(canvas, seek);
+                    }
+                }
+
+                if (animationState == AnimationState.RUNNING && !numPointsTF.getText().isEmpty()) {
+                    int ticks = clock.advance(current, delaySlider.getValue());
+                    if (ticks > 0) {
+                        // Skip the frames rendering could not keep up with, but still record them
+                        for (int i = 1; i < ticks; i++) {
+                            record();
+                            visualization.incrementTTN(stepNumSlider.getValue());
+                            layers = Layer.advanceAll(layers);
                         }
+                        run(false);
+                    }
+                }
+
+                long dropped = clock.getDroppedFrames() + chordWorker.getDroppedFrames();
+                if (dropped != shownDroppedFrames) {
+                    shownDroppedFrames = dropped;
+                    droppedLabel.setText("Dropped frames: " + dropped);
+                }
+
+                if (current - lastMetricsSnapshot >= METRICS_INTERVAL_NANOS) {
+                    lastMetricsSnapshot = current;
+                    metrics.recordDropped(dropped);
+                    metrics.recordFrameCache(frameCache);
+                    metrics.snapshot(current);
+                    if (hudLabel.isVisible()) {
+                        hudLabel.setText(metrics.format());
                     }
                 }
             }
@@ -324,6 +630,7 @@ public class Main extends Application {
         // Button actions
         playBtn.setOnAction(e -> {
             animationState = AnimationState.RUNNING;
+            timer.resetClock();
             timer.start();
             updateStatusLabel(statusLabel, animationState);
         });
@@ -335,13 +642,11 @@ public class Main extends Application {
 
         stopBtn.setOnAction(e -> {
             animationState = AnimationState.STOPPED;
-            timer.stop();
             updateStatusLabel(statusLabel, animationState);
         });
 
         resetBtn.setOnAction(e -> {
             animationState = AnimationState.STOPPED;
-            timer.stop();
             visualization.setTimesTableNum(2.0);
             ttnJTF.setText("2");
             numPointsTF.setText("360");
@@ -349,7 +654,7 @@ public class Main extends Application {
             delaySlider.setValue(0.1);
             colorPicker.setValue(Color.RED);
             showCircleCheckBox.setSelected(true);
-            updateVisualization(canvasPane, visualization, numPointsTF, colorPicker,
+            updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
                     ttnValueLabel, patternNameLabel, formulaLabel, true);
             updateStatusLabel(statusLabel, animationState);
         });
@@ -368,17 +673,145 @@ public class Main extends Application {
             saveVisualizationImage(primaryStage, canvasPane);
         });
 
+        exportHighResBtn.setOnAction(e -> {
+            try {
+                int numPoints = (int) Double.parseDouble(numPointsTF.getText());
+                exportHighResImage(primaryStage, exportHighResBtn, visualization.getTimesTableNumber(),
+                        numPoints, colorPicker.getValue());
+            } catch (NumberFormatException ex) {
+                showError("Invalid number of points");
+            }
+        });
+
+        exportVectorBtn.setOnAction(e -> {
+            try {
+                int numPoints = (int) Double.parseDouble(numPointsTF.getText());
+                exportVectorImage(primaryStage, exportVectorBtn, visualization.getTimesTableNumber(),
+                        numPoints, colorPicker.getValue());
+            } catch (NumberFormatException ex) {
+                showError("Invalid number of points");
+            }
+        });
+
+        recordBtn.setOnAction(e -> {
+            if (recorder == null) {
+                // Record at the pace the animation produces frames
+                double fps = delaySlider.getValue() > 0 ? Math.min(60, 1 / delaySlider.getValue()) : 60;
+                if (startRecording(primaryStage, fps)) {
+                    recordBtn.setText("⏹ Stop Recording");
+                    timer.run(true);
+                }
+            } else {
+                recordBtn.setDisable(true);
+                recordBtn.setText("Saving…");
+                stopRecording(() -> {
+                    recordBtn.setDisable(false);
+                    recordBtn.setText("⏺ Record Animation");
+                });
+            }
+        });
+
         darkModeBtn.setOnAction(e -> {
             themeManager.toggleTheme();
-            applyTheme(root, controlPanel, circle, ttnValueLabel, patternNameLabel, formulaLabel,
+            applyTheme(root, controlPanel, circle, ttnValueLabel, patternNameLabel, formulaLabel, analysisLabel,
                     ttnLabel, playbackLabel, speedLabel, jumpLabel, appearanceLabel, actionsLabel,
-                    presetsTitle, stepLabel, delayLabel, ttnJLabel, pointsJLabel, colorLabel, title);
+                    presetsTitle, stepLabel, delayLabel, ttnJLabel, pointsJLabel, colorLabel, rendererLabel, toneMapLabel,
+                    droppedLabel, title, timelineLabel, timelineFromLabel, timelineToLabel, layersLabel,
+                    layerRadiusLabel, layerCountLabel);
             showCircleCheckBox.setStyle(themeManager.getLabelStyle());
             scrollPane.setStyle("-fx-background: " + themeManager.getPanelBackgroundColor() + ";");
             darkModeBtn.setText(
                     themeManager.getCurrentTheme() == ThemeManager.Theme.LIGHT ? "🌙 Dark Mode" : "☀ Light Mode");
         });
 
+        // Timeline scrubbing: dragging shows prerendered frames, releasing draws the exact frame
+        timelineSlider.setOnMousePressed(e -> {
+            if (animationState == AnimationState.RUNNING) {
+                pauseBtn.fire();
+            }
+            refreshKeyframes(canvas, numPointsTF, colorPicker);
+        });
+
+        timelineSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (syncingTimeline) {
+                return;
+            }
+            visualization.setTimesTableNum(newVal.doubleValue());
+            ttnJTF.setText(String.format("%.2f", newVal.doubleValue()));
+            if (timelineSlider.isValueChanging() && keyframeIndex != null) {
+                if (!scrubbing) {
+                    // The layers may have moved on since the index was built; rebuild it with the stack on screen
+                    refreshKeyframes(canvas, numPointsTF, colorPicker);
+                }
+                scrubTo(canvasPane, canvas, newVal.doubleValue());
+                updateLabels(visualization, numPointsTF, ttnValueLabel, patternNameLabel, formulaLabel);
+            } else {
+                detail.interact(System.nanoTime());
+                updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                        ttnValueLabel, patternNameLabel, formulaLabel, false);
+            }
+        });
+
+        timelineSlider.valueChangingProperty().addListener((obs, wasChanging, changing) -> {
+            if (!changing && scrubbing) {
+                scrubbing = false;
+                scrubShownTtn = Double.NaN;
+                keyframeIndex.cancelSeek();
+                updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                        ttnValueLabel, patternNameLabel, formulaLabel, false);
+            }
+        });
+
+        EventHandler<ActionEvent> timelineRangeAction = e -> {
+            try {
+                double from = Double.parseDouble(timelineFromTF.getText());
+                double to = Double.parseDouble(timelineToTF.getText());
+                if (to <= from) {
+                    showError("The end of the timeline must be after its start");
+                    return;
+                }
+                syncingTimeline = true;
+                timelineSlider.setMin(from);
+                timelineSlider.setMax(to);
+                timelineSlider.setValue(visualization.getTimesTableNumber());
+                syncingTimeline = false;
+                refreshKeyframes(canvas, numPointsTF, colorPicker);
+            } catch (NumberFormatException ex) {
+                showError("Invalid number format for the timeline range");
+            }
+        };
+        timelineFromTF.setOnAction(timelineRangeAction);
+        timelineToTF.setOnAction(timelineRangeAction);
+
+        // Stack the current times table as a layer, with its own radius and step
+        addLayerBtn.setOnAction(e -> {
+            try {
+                int numPoints = (int) Double.parseDouble(numPointsTF.getText());
+                double radius = Double.parseDouble(layerRadiusTF.getText());
+                Layer layer = new Layer(visualization.getTimesTableNumber(), numPoints, radius,
+                        colorPicker.getValue(), stepNumSlider.getValue());
+                Layer[] stacked = Arrays.copyOf(layers, layers.length + 1);
+                stacked[layers.length] = layer;
+                layers = stacked;
+            } catch (NumberFormatException ex) {
+                showError("Invalid number of points or radius");
+                return;
+            } catch (IllegalArgumentException ex) {
+                showError("A layer needs a positive radius");
+                return;
+            }
+            layerCountLabel.setText("Stacked layers: " + layers.length);
+            updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                    ttnValueLabel, patternNameLabel, formulaLabel, false);
+        });
+
+        clearLayersBtn.setOnAction(e -> {
+            layers = NO_LAYERS;
+            layerCountLabel.setText("Stacked layers: 0");
+            updateVisualization(canvasPane, canvas, visualization, numPointsTF, colorPicker,
+                    ttnValueLabel, patternNameLabel, formulaLabel, false);
+        });
+
         // Keyboard shortcuts
         scene.setOnKeyPressed(e -> {
             if (e.getCode() == KeyCode.SPACE) {
@@ -401,28 +834,40 @@ public class Main extends Application {
             } else if (e.getCode() == KeyCode.D) {
                 darkModeBtn.fire();
                 e.consume();
+            } else if (e.getCode() == KeyCode.F) {
+                hudLabel.setVisible(!hudLabel.isVisible());
+                hudLabel.setText(metrics.format());
+                e.consume();
+            } else if (e.getCode() == KeyCode.M) {
+                List<Visualization.RenderMode> modes = renderModeBox.getItems();
+                renderModeBox.setValue(modes.get((modes.indexOf(renderModeBox.getValue()) + 1) % modes.size()));
+                e.consume();
             } else if (e.getCode() == KeyCode.UP) {
                 double newTTN = visualization.getTimesTableNumber() + 0.1;
                 visualization.setTimesTableNum(newTTN);
                 ttnJTF.setText(String.format("%.1f", newTTN));
+                detail.interact(System.nanoTime());
                 timer.run(true);
                 e.consume();
             } else if (e.getCode() == KeyCode.DOWN) {
                 double newTTN = Math.max(0, visualization.getTimesTableNumber() - 0.1);
                 visualization.setTimesTableNum(newTTN);
                 ttnJTF.setText(String.format("%.1f", newTTN));
+                detail.interact(System.nanoTime());
                 timer.run(true);
                 e.consume();
             } else if (e.getCode() == KeyCode.LEFT) {
                 double newTTN = Math.max(0, visualization.getTimesTableNumber() - 1.0);
                 visualization.setTimesTableNum(newTTN);
                 ttnJTF.setText(String.format("%.1f", newTTN));
+                detail.interact(System.nanoTime());
                 timer.run(true);
                 e.consume();
             } else if (e.getCode() == KeyCode.RIGHT) {
                 double newTTN = visualization.getTimesTableNumber() + 1.0;
                 visualization.setTimesTableNum(newTTN);
                 ttnJTF.setText(String.format("%.1f", newTTN));
+                detail.interact(System.nanoTime());
                 timer.run(true);
                 e.consume();
             } else if (e.getCode().isDigitKey()) {
@@ -441,8 +886,26 @@ public class Main extends Application {
             }
         });
 
+        // The timer always runs to pick up frames from the chord worker; it only
+        // advances the animation while playing
+        timer.start();
+
         // Initial render
         timer.run(true);
+        refreshKeyframes(canvas, numPointsTF, colorPicker);
+    }
+
+    @Override
+    public void stop() {
+        chordWorker.close();
+        patternAnalyzer.close();
+        if (keyframeIndex != null) {
+            keyframeIndex.close();
+        }
+        if (densityRenderer != null) {
+            densityRenderer.close();
+        }
+        PresetLibrary.getDefault().close();
     }
 
     private VBox createControlPanel() {
@@ -452,35 +915,333 @@ public class Main extends Application {
         return panel;
     }
 
-    private void updateVisualization(Pane canvasPane, Visualization visualization,
+    private void updateVisualization(Pane canvasPane, Canvas canvas, Visualization visualization,
             TextField numPointsTF, ColorPicker colorPicker,
             Label ttnValueLabel, Label patternNameLabel,
             Label formulaLabel, boolean jumpTo) {
-        // Remove old lines
-        canvasPane.getChildren().removeIf(node -> node instanceof Group);
+        double numPoints;
+        try {
+            numPoints = Double.parseDouble(numPointsTF.getText());
+        } catch (NumberFormatException ex) {
+            // Invalid input, skip update
+            return;
+        }
 
-        // Generate new lines
+        long start = System.nanoTime();
         try {
-            double numPoints = Double.parseDouble(numPointsTF.getText());
             Color selectedColor = colorPicker.getValue();
-            Group lines = visualization.generateLines(numPoints, selectedColor);
-
-            // Add fade-in effect
-            FadeTransition fade = new FadeTransition(Duration.millis(200), lines);
-            fade.setFromValue(0.0);
-            fade.setToValue(1.0);
-
-            canvasPane.getChildren().add(0, lines);
-            fade.play();
-
-            // Update labels
-            DecimalFormat df = new DecimalFormat("#.0");
-            ttnValueLabel.setText(df.format(visualization.getTimesTableNumber()));
-            patternNameLabel.setText(PresetPatterns.identifyPattern(visualization.getTimesTableNumber()));
-            formulaLabel.setText(String.format("n × %.1f mod %.0f",
-                    visualization.getTimesTableNumber(), numPoints));
+            RenderState next = new RenderState(visualization.getTimesTableNumber(), (int) numPoints, RADIUS,
+                    selectedColor, themeManager.getCurrentTheme(), visualization.getRenderMode(), toneMap, layers);
+            RenderState.Change change = next.changeFrom(renderState);
+            renderState = next;
+
+            if (change == RenderState.Change.NONE) {
+                return;
+            }
+            // A frame recalled from the cache has no chords behind it to restyle
+            if (change == RenderState.Change.STYLE && presentedFromCache) {
+                change = RenderState.Change.GEOMETRY;
+            }
+            if (change == RenderState.Change.STYLE) {
+                if (next.getRenderMode() == Visualization.RenderMode.DENSITY) {
+                    // The accumulated coverage of the frame on screen is kept, only tone-map it again
+                    ChordBuffer shown = chordWorker.getDisplayed();
+                    if (shown != null && shown.getCoverage() != null) {
+                        drawDensity(canvas, shown.getCoverage(), selectedColor);
+                        Visualization.drawLayers(canvas.getGraphicsContext2D(), chordWorker.getDisplayed().getLayers());
+                    }
+                } else if (currentLines != null) {
+                    Visualization.restyleLines(currentLines, selectedColor);
+                } else if (chordMesh != null && chordMesh.isShowing()) {
+                    chordMesh.setColor(selectedColor);
+                } else if (chordWorker.getDisplayed() != null) {
+                    Visualization.drawLines(canvas.getGraphicsContext2D(), chordWorker.getDisplayed(), selectedColor);
+                    Visualization.drawLayers(canvas.getGraphicsContext2D(), chordWorker.getDisplayed().getLayers());
+                }
+                return;
+            }
+
+            FrameCache.Frame cached = isCacheable(next) ? frameCache.get(next) : null;
+            if (cached != null) {
+                // Shown before: put it back right away and drop whatever the worker was mapping
+                chordWorker.cancel();
+                requestedStride = 1;
+                removeLines(canvasPane);
+                Visualization.drawPixels(canvas.getGraphicsContext2D(), cached.getPixels(),
+                        cached.getWidth(), cached.getHeight());
+                presentedFromCache = true;
+            } else {
+                // Map the new chords in the background; presentFrame draws them once they are ready
+                requestedStride = detail.strideFor((int) numPoints, System.nanoTime());
+                chordWorker.request(visualization.getGeometry(numPoints), visualization.getTimesTableNumber(), layers,
+                        requestedStride, next.getRenderMode() == Visualization.RenderMode.DENSITY);
+                fadeNextFrame = jumpTo;
+            }
+
+            updateLabels(visualization, numPointsTF, ttnValueLabel, patternNameLabel, formulaLabel);
+            syncTimeline(visualization.getTimesTableNumber());
+        } finally {
+            metrics.recordStage(RenderMetrics.Stage.UPDATE, System.nanoTime() - start);
+        }
+    }
+
+    private void updateLabels(Visualization visualization, TextField numPointsTF, Label ttnValueLabel,
+            Label patternNameLabel, Label formulaLabel) {
+        double numPoints;
+        try {
+            numPoints = Double.parseDouble(numPointsTF.getText());
         } catch (NumberFormatException ex) {
-            // Invalid input, skip update
+            return;
+        }
+        ttnValueLabel.setText(TTN_FORMAT.format(visualization.getTimesTableNumber()));
+        patternNameLabel.setText(PresetPatterns.identifyPattern(visualization.getTimesTableNumber()));
+        formulaLabel.setText(String.format("n × %.1f mod %.0f",
+                visualization.getTimesTableNumber(), numPoints));
+        patternAnalyzer.request(visualization.getTimesTableNumber(), (int) numPoints);
+    }
+
+    /**
+     * Moves the timeline thumb to a times table number reached some other way, such as the
+     * animation, a preset or a key.
+     */
+    private void syncTimeline(double ttn) {
+        if (timelineSlider != null && !timelineSlider.isValueChanging()) {
+            syncingTimeline = true;
+            timelineSlider.setValue(ttn);
+            syncingTimeline = false;
+        }
+    }
+
+    /**
+     * Starts building keyframes for the timeline range, point count, color and layers, unless the
+     * current index already covers them.
+     */
+    private void refreshKeyframes(Canvas canvas, TextField numPointsTF, ColorPicker colorPicker) {
+        int numPoints;
+        try {
+            numPoints = (int) Double.parseDouble(numPointsTF.getText());
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        java.awt.Color color = toAwtColor(colorPicker.getValue());
+        double from = timelineSlider.getMin();
+        double to = timelineSlider.getMax();
+        if (keyframeIndex != null && keyframeIndex.matches(numPoints, from, to, color, layers)) {
+            return;
+        }
+        if (keyframeIndex != null) {
+            keyframeIndex.close();
+        }
+        keyframeIndex = new KeyframeIndex(numPoints, from, to, (int) canvas.getWidth(), (int) canvas.getHeight(),
+                RADIUS, color, layers);
+    }
+
+    /**
+     * Shows the timeline position being dragged to: the nearest keyframe right away, and the exact
+     * frame once the keyframe index has drawn it.
+     */
+    private void scrubTo(Pane canvasPane, Canvas canvas, double ttn) {
+        if (!scrubbing) {
+            scrubbing = true;
+            // Nothing the worker maps for the old position may overwrite the scrub frames
+            chordWorker.cancel();
+            requestedStride = 1;
+            removeLines(canvasPane);
+            renderState = null;
+            presentedFromCache = false;
+        }
+        KeyframeIndex.Frame keyframe = keyframeIndex.nearest(ttn);
+        // Keep the frame on screen if it is at least as close to the pointer as the nearest keyframe
+        if (keyframe != null
+                && !(Math.abs(scrubShownTtn - ttn) <= Math.abs(keyframe.getTimesTableNumber() - ttn))) {
+            showScrubFrame(canvas, keyframe);
+        }
+        keyframeIndex.seek(ttn);
+    }
+
+    private void showScrubFrame(Canvas canvas, KeyframeIndex.Frame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (scrubImage == null || scrubImage.getWidth() != width || scrubImage.getHeight() != height) {
+            scrubImage = new WritableImage(width, height);
+        }
+        scrubImage.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(),
+                frame.getPixels(), 0, width);
+        Visualization.clear(canvas.getGraphicsContext2D());
+        canvas.getGraphicsContext2D().drawImage(scrubImage, 0, 0, canvas.getWidth(), canvas.getHeight());
+        scrubShownTtn = frame.getTimesTableNumber();
+    }
+
+    /**
+     * Puts a frame finished by the chord worker on screen, in the render mode and color of the
+     * current render state. Runs on the FX thread and only issues draw calls.
+     */
+    private void presentFrame(Pane canvasPane, Canvas canvas, ChordBuffer frame) {
+        RenderMetrics.FrameEvent event = new RenderMetrics.FrameEvent();
+        event.begin();
+        long start = System.nanoTime();
+
+        removeLines(canvasPane);
+        presentedFromCache = false;
+        Visualization.clear(canvas.getGraphicsContext2D());
+
+        // Draw new lines
+        Color color = renderState.getColor();
+        int[] densityPixels = null;
+        boolean cacheable = frame.getStride() == 1;
+        if (renderState.getRenderMode() == Visualization.RenderMode.CANVAS) {
+            Visualization.drawLines(canvas.getGraphicsContext2D(), frame, color);
+        } else if (renderState.getRenderMode() == Visualization.RenderMode.DENSITY) {
+            if (frame.getCoverage() != null) {
+                densityPixels = drawDensity(canvas, frame.getCoverage(), color);
+            } else {
+                // Mapped before the render mode changed; the frame with coverage follows right away
+                Visualization.drawLines(canvas.getGraphicsContext2D(), frame, color);
+                cacheable = false;
+            }
+        } else if (renderState.getRenderMode() == Visualization.RenderMode.MESH) {
+            if (chordMesh == null) {
+                chordMesh = new ChordMesh();
+                canvasPane.getChildren().add(0, chordMesh.getNode());
+            }
+            chordMesh.update(frame, color);
+        } else {
+            currentLines = Visualization.generateLines(frame, color);
+            canvasPane.getChildren().add(0, currentLines);
+
+            // Fade in on jumps only, animation frames follow each other too quickly to fade
+            if (fadeNextFrame) {
+                fade.stop();
+                fade.setNode(currentLines);
+                fade.setFromValue(0.0);
+                fade.setToValue(1.0);
+                fade.playFromStart();
+            }
+        }
+        fadeNextFrame = false;
+
+        // Layers go on the canvas in every mode, in one pass on top of the main chords
+        LayerBatch frameLayers = frame.getLayers();
+        Visualization.drawLayers(canvas.getGraphicsContext2D(), frameLayers);
+        boolean layered = frameLayers != null && frameLayers.getLayerCount() > 0;
+        if (layered) {
+            // The tone-mapped pixels no longer show everything on the canvas
+            densityPixels = null;
+        }
+
+        RenderState shown = new RenderState(frame.getTimesTableNumber(), frame.getGeometry().getNumPoints(),
+                renderState.getRadius(), color, renderState.getTheme(), renderState.getRenderMode(),
+                renderState.getToneMap(), layered ? frameLayers.getLayers() : NO_LAYERS);
+        // Previews are replaced by the full frame moments later and are not worth keeping
+        if (cacheable && isCacheable(shown)) {
+            cacheFrame(canvas, shown, densityPixels);
+        }
+
+        metrics.recordStage(RenderMetrics.Stage.DRAW, System.nanoTime() - start);
+        metrics.recordPresented(frame.getCount(), frame.getSkippedCount());
+        detail.recordPresented(frame.getCount());
+        event.end();
+        if (event.shouldCommit()) {
+            event.timesTableNumber = frame.getTimesTableNumber();
+            event.numPoints = frame.getGeometry().getNumPoints();
+            event.chordCount = frame.getCount();
+            event.skippedChordCount = frame.getSkippedCount();
+            event.commit();
+        }
+    }
+
+    /**
+     * Takes the chords of the previous frame off the scene graph, for render modes that do not draw
+     * onto the canvas.
+     */
+    private void removeLines(Pane canvasPane) {
+        if (currentLines != null) {
+            canvasPane.getChildren().remove(currentLines);
+            currentLines = null;
+        }
+        if (chordMesh != null) {
+            chordMesh.hide();
+        }
+    }
+
+    private int[] drawDensity(Canvas canvas, DensityRenderer.Coverage coverage, Color color) {
+        if (densityRenderer == null) {
+            // Tone-mapping only: one thread, no pool and no accumulation buffer
+            densityRenderer = new DensityRenderer(coverage.getWidth(), coverage.getHeight(), 1);
+        }
+        int[] argb = densityRenderer.toneMap(coverage, toAwtColor(color), null, renderState.getToneMap(),
+                DensityRenderer.DEFAULT_GAMMA);
+        Visualization.drawPixels(canvas.getGraphicsContext2D(), argb,
+                densityRenderer.getWidth(), densityRenderer.getHeight());
+        return argb;
+    }
+
+    /**
+     * Frames are cached only while the animation is not running: presets, key presses and scrubbing
+     * land on the same few states again and again, a running animation hardly ever does. Node and
+     * mesh frames live in the scene graph rather than in the canvas and are not cached at all.
+     */
+    private boolean isCacheable(RenderState state) {
+        return animationState != AnimationState.RUNNING
+                && (state.getRenderMode() == Visualization.RenderMode.CANVAS
+                        || state.getRenderMode() == Visualization.RenderMode.DENSITY);
+    }
+
+    /**
+     * Stores the frame just drawn on the canvas in the frame cache. Density frames are copied from
+     * the tone-mapped pixels, canvas frames are read back from a snapshot of the canvas.
+     */
+    private void cacheFrame(Canvas canvas, RenderState shown, int[] densityPixels) {
+        int width = (int) canvas.getWidth();
+        int height = (int) canvas.getHeight();
+        int[] argb = densityPixels;
+        if (argb == null) {
+            SnapshotParameters parameters = new SnapshotParameters();
+            parameters.setFill(Color.TRANSPARENT);
+            cacheSnapshot = canvas.snapshot(parameters, cacheSnapshot);
+            if (cachePixels == null || cachePixels.length != width * height) {
+                cachePixels = new int[width * height];
+            }
+            argb = cachePixels;
+            cacheSnapshot.getPixelReader().getPixels(0, 0, width, height,
+                    PixelFormat.getIntArgbInstance(), argb, 0, width);
+        }
+        frameCache.put(shown, argb, width, height);
+    }
+
+    private void refreshLibrary(ComboBox<PresetPatterns.Pattern> libraryBox) {
+        PresetLibrary.Index index = PresetLibrary.getDefault().getIndex();
+        PresetPatterns.Pattern[] presets = new PresetPatterns.Pattern[index.size()];
+        for (int i = 0; i < presets.length; i++) {
+            presets[i] = index.get(i);
+        }
+        libraryBox.getItems().setAll(presets);
+    }
+
+    /**
+     * Asks for a name and saves the current times table number and point count to the preset library.
+     */
+    private void savePreset(double ttn, TextField numPointsTF) {
+        int numPoints;
+        try {
+            numPoints = (int) Double.parseDouble(numPointsTF.getText());
+        } catch (NumberFormatException ex) {
+            showError("Invalid number of points");
+            return;
+        }
+        TextInputDialog nameDialog = new TextInputDialog(String.format("Pattern %.4f", ttn));
+        nameDialog.setTitle("Save Preset");
+        nameDialog.setHeaderText(null);
+        nameDialog.setContentText("Name:");
+        Optional<String> name = nameDialog.showAndWait();
+        if (!name.isPresent() || name.get().isBlank()) {
+            return;
+        }
+        try {
+            PresetLibrary.getDefault().add(new PresetPatterns.Pattern(name.get().trim(), ttn, numPoints,
+                    String.format("n × %.4f mod %d", ttn, numPoints)));
+        } catch (IOException ex) {
+            showError("Failed to save preset: " + ex.getMessage());
         }
     }
 
@@ -546,6 +1307,149 @@ public class Main extends Application {
         }
     }
 
+    private void exportHighResImage(Stage stage, Button exportButton, double ttn, int numPoints, Color color) {
+        TextInputDialog sizeDialog = new TextInputDialog("16384");
+        sizeDialog.setTitle("Export High-Res");
+        sizeDialog.setHeaderText(null);
+        sizeDialog.setContentText("Width in pixels:");
+        Optional<String> input = sizeDialog.showAndWait();
+        if (!input.isPresent()) {
+            return;
+        }
+
+        int width;
+        try {
+            width = Integer.parseInt(input.get().trim());
+        } catch (NumberFormatException ex) {
+            showError("Invalid width: " + input.get());
+            return;
+        }
+        if (width <= 0 || width > 65536) {
+            showError("Width must be between 1 and 65536 pixels");
+            return;
+        }
+        int height = (int) Math.round(width * HEIGHT / WIDTH);
+
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export High-Res");
+        fileChooser.setInitialFileName("timestable_" + width + "x" + height + ".png");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG Image", "*.png"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        java.awt.Color lineColor = toAwtColor(color);
+        java.awt.Color background = java.awt.Color.decode(themeManager.getBackgroundColor());
+        exportButton.setDisable(true);
+
+        // Large exports take minutes, keep them off the FX thread
+        Thread exporter = new Thread(() -> {
+            try {
+                double radius = Math.min(width, height) * RADIUS / HEIGHT;
+                ChordGeometry geometry = ChordGeometry.forCircle(radius, numPoints, width / 2.0, height / 2.0);
+                TiledExporter tiled = new TiledExporter(width, height, TiledExporter.DEFAULT_TILE_SIZE,
+                        Runtime.getRuntime().availableProcessors(), background, true,
+                        TiledExporter.scaledLineWidth(width, height));
+                tiled.export(geometry.map(ttn, new ChordBuffer()), lineColor,
+                        new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+                Platform.runLater(() -> showInfo("Image saved successfully to: " + file.getAbsolutePath()));
+            } catch (IOException ex) {
+                Platform.runLater(() -> showError("Failed to export image: " + ex.getMessage()));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                Platform.runLater(() -> exportButton.setDisable(false));
+            }
+        }, "high-res-export");
+        exporter.start();
+    }
+
+    private void exportVectorImage(Stage stage, Button exportButton, double ttn, int numPoints, Color color) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Vector");
+        fileChooser.setInitialFileName("timestable_visualization.svg");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("SVG Image", "*.svg"),
+                new FileChooser.ExtensionFilter("PDF Document", "*.pdf"));
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) {
+            return;
+        }
+
+        java.awt.Color lineColor = toAwtColor(color);
+        java.awt.Color background = java.awt.Color.decode(themeManager.getBackgroundColor());
+        Layer[] stack = layers;
+        exportButton.setDisable(true);
+
+        // Millions of chords take a moment to write, keep them off the FX thread
+        Thread exporter = new Thread(() -> {
+            try (VectorWriter writer = VectorWriter.open(file, (int) WIDTH, (int) HEIGHT, background)) {
+                ChordBuffer chords = ChordGeometry.forCircle(RADIUS, numPoints).map(ttn, new ChordBuffer());
+                writer.writeChords(chords, lineColor, 1);
+                if (stack.length > 0) {
+                    writer.writeLayers(chords.mapLayers(stack).getLayers(), 1);
+                }
+                Platform.runLater(() -> showInfo("Image saved successfully to: " + file.getAbsolutePath()));
+            } catch (IOException ex) {
+                Platform.runLater(() -> showError("Failed to export image: " + ex.getMessage()));
+            } finally {
+                Platform.runLater(() -> exportButton.setDisable(false));
+            }
+        }, "vector-export");
+        exporter.start();
+    }
+
+    private boolean startRecording(Stage stage, double fps) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Record Animation");
+        fileChooser.setInitialFileName("timestable_animation.gif");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Animated GIF", "*.gif"),
+                new FileChooser.ExtensionFilter("Animated PNG", "*.png", "*.apng"));
+        if (FfmpegEncoder.findExecutable() != null) {
+            fileChooser.getExtensionFilters().add(
+                    new FileChooser.ExtensionFilter("MP4 Video (ffmpeg)", "*.mp4"));
+        }
+
+        File file = fileChooser.showSaveDialog(stage);
+        if (file == null) {
+            return false;
+        }
+        try {
+            FrameEncoder encoder = FrameEncoder.open(file, (int) WIDTH, (int) HEIGHT, fps);
+            recorder = new AnimationRecorder(encoder, (int) WIDTH, (int) HEIGHT, RADIUS);
+            return true;
+        } catch (IOException e) {
+            showError("Failed to start recording: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void stopRecording(Runnable onFinished) {
+        AnimationRecorder finishing = recorder;
+        recorder = null;
+
+        // Flushing the remaining frames can take a while, keep it off the FX thread
+        Thread saver = new Thread(() -> {
+            try {
+                finishing.close();
+                Platform.runLater(() -> showInfo(String.format("Recorded %d frames (%d dropped)",
+                        finishing.getRecordedFrames(), finishing.getDroppedFrames())));
+            } catch (IOException e) {
+                Platform.runLater(() -> showError("Failed to save recording: " + e.getMessage()));
+            } finally {
+                Platform.runLater(onFinished);
+            }
+        }, "recorder-finish");
+        saver.start();
+    }
+
+    private static java.awt.Color toAwtColor(Color color) {
+        return new java.awt.Color((float) color.getRed(), (float) color.getGreen(),
+                (float) color.getBlue(), (float) color.getOpacity());
+    }
+
     private void showError(String message) {
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle("Error");
@@ -0,0 +1,341 @@
+import java.util.Arrays;
+
+/**
+ * The structure of the times table pattern of a times table number and a point count: the cycles
+ * of the mapping {@code n -> floor(ttn * n) mod numPoints}, the cusps of the envelope, the rotational
+ * symmetry and how long the chords are.
+ * <p>
+ * Everything is computed from the same exact fixed-point targets the chords are drawn with (see
+ * {@link ChordGeometry#mapFixed(long, ChordBuffer)}), in a few linear passes over arrays kept in a
+ * {@link Workspace}, so ten million points take a fraction of a second. Results are immutable and
+ * may be handed between threads.
+ * </p>
+ * <ul>
+ *   <li>Cycles: following the mapping from any point ends in a cycle. Points not on a cycle lie on
+ *   tails leading into one; there are none exactly when the mapping is a permutation.</li>
+ *   <li>Cusps: chords collapse to a point wherever {@code ttn * t = t} on the circle, which for
+ *   {@code ttn = k} happens at {@code |k - 1|} angles, the cusps of the epicycloid the chords
+ *   envelope (one for the cardioid, two for the nephroid). Since only {@code ttn mod numPoints}
+ *   matters, the nearer of {@code ttn} and {@code ttn - numPoints} is used.</li>
+ *   <li>Symmetry: the largest {@code d} such that turning the pattern by {@code 1/d} of a full turn
+ *   maps every chord onto a chord, that is {@code target(n + r) = target(n) + r} with
+ *   {@code r = numPoints / d}.</li>
+ *   <li>Chord lengths: a histogram of {@value #LENGTH_BINS} bins from zero to the diameter.
+ *   Zero-length chords are not drawn and not counted.</li>
+ * </ul>
+ *
+ * @author Adam Abusang
+ */
+public final class PatternAnalysis {
+
+    /**
+     * The number of bins of the chord length histogram.
+     */
+    public static final int LENGTH_BINS = 16;
+
+    private static final char[] BARS = {' ', '▁', '▂', '▃', '▄', '▅', '▆', '▇', '█'};
+
+    /**
+     * Arrays reused from one analysis to the next. Not thread-safe; each thread needs its own.
+     */
+    public static final class Workspace {
+        private int[] targets = new int[0];
+        private int[] divisors = new int[0];
+        // The histogram bin of every distance between two points, for lengthBinsPoints points
+        private byte[] lengthBins = new byte[0];
+        private int lengthBinsPoints = -1;
+    }
+
+    private final double timesTableNumber;
+    private final int numPoints;
+    private final int cycleCount;
+    private final int longestCycle;
+    private final int pointsOnCycles;
+    private final int fixedPoints;
+    private final int cusps;
+    private final int symmetry;
+    private final int[] lengthHistogram;
+    private final long analysisNanos;
+
+    private PatternAnalysis(double timesTableNumber, int numPoints, int cycleCount, int longestCycle,
+            int pointsOnCycles, int fixedPoints, int cusps, int symmetry, int[] lengthHistogram,
+            long analysisNanos) {
+        this.timesTableNumber = timesTableNumber;
+        this.numPoints = numPoints;
+        this.cycleCount = cycleCount;
+        this.longestCycle = longestCycle;
+        this.pointsOnCycles = pointsOnCycles;
+        this.fixedPoints = fixedPoints;
+        this.cusps = cusps;
+        this.symmetry = symmetry;
+        this.lengthHistogram = lengthHistogram;
+        this.analysisNanos = analysisNanos;
+    }
+
+    /**
+     * Analyzes the pattern of a times table number.
+     *
+     * @param ttn the times table number in millionths, see {@link FixedTtn}
+     * @param numPoints the number of points on the circle, at least 1
+     * @param workspace the arrays to work in
+     * @return the analysis
+     */
+    public static PatternAnalysis analyze(long ttn, int numPoints, Workspace workspace) {
+        if (numPoints < 1) {
+            throw new IllegalArgumentException("numPoints must be positive");
+        }
+        long start = System.nanoTime();
+        int[] targets = mapTargets(ttn, numPoints, workspace);
+
+        int[] histogram = new int[LENGTH_BINS];
+        byte[] bins = lengthBins(numPoints, workspace);
+        for (int n = 0; n < numPoints; n++) {
+            int distance = targets[n] - n;
+            if (distance < 0) {
+                distance += numPoints;
+            }
+            if (distance != 0) {
+                histogram[bins[Math.min(distance, numPoints - distance)]]++;
+            }
+        }
+        int symmetry = symmetry(targets, numPoints, workspace);
+
+        // Cycles: walk from every point not seen yet, numbering the steps. Each point is reached
+        // once, so its target is replaced by the step it was reached at, stored as -1 - step; the
+        // walk then touches one array instead of two, which matters once it no longer fits in the
+        // cache. Meeting a point of the current walk closes a cycle as long as the steps since then;
+        // meeting one of an earlier walk joins a tail to a known cycle
+        int cycleCount = 0;
+        int longestCycle = 0;
+        int pointsOnCycles = 0;
+        int fixedPoints = 0;
+        int step = 0;
+        for (int first = 0; first < numPoints; first++) {
+            if (targets[first] < 0) {
+                continue;
+            }
+            int walkStart = step;
+            int n = first;
+            int next;
+            while ((next = targets[n]) >= 0) {
+                targets[n] = -1 - step++;
+                n = next;
+            }
+            int reached = -1 - next;
+            if (reached >= walkStart) {
+                int length = step - reached;
+                cycleCount++;
+                pointsOnCycles += length;
+                longestCycle = Math.max(longestCycle, length);
+                if (length == 1) {
+                    fixedPoints++;
+                }
+            }
+        }
+
+        return new PatternAnalysis(FixedTtn.toDouble(ttn), numPoints, cycleCount, longestCycle, pointsOnCycles,
+                fixedPoints, cusps(ttn, numPoints), symmetry, histogram, System.nanoTime() - start);
+    }
+
+    /**
+     * Fills the target of every point, stepping the product from one point to the next like
+     * {@link ChordGeometry#mapFixed(long, ChordBuffer)} does.
+     */
+    private static int[] mapTargets(long ttn, int numPoints, Workspace workspace) {
+        if (workspace.targets.length < numPoints) {
+            workspace.targets = new int[numPoints];
+        }
+        int[] targets = workspace.targets;
+        long reduced = Math.floorMod(ttn, numPoints * FixedTtn.SCALE);
+        int whole = (int) (reduced / FixedTtn.SCALE);
+        int fraction = (int) (reduced % FixedTtn.SCALE);
+        int scale = (int) FixedTtn.SCALE;
+        int target = 0;
+        int remainder = 0;
+        for (int n = 0; n < numPoints; n++) {
+            targets[n] = target;
+            target += whole;
+            remainder += fraction;
+            if (remainder >= scale) {
+                remainder -= scale;
+                target++;
+            }
+            if (target >= numPoints) {
+                target -= numPoints;
+            }
+        }
+        return targets;
+    }
+
+    private static int cusps(long ttn, int numPoints) {
+        long period = numPoints * FixedTtn.SCALE;
+        long reduced = Math.floorMod(ttn, period);
+        long offset = Math.min(Math.abs(reduced - FixedTtn.SCALE), Math.abs(reduced - period - FixedTtn.SCALE));
+        return (int) ((offset + FixedTtn.SCALE - 1) / FixedTtn.SCALE);
+    }
+
+    /**
+     * Tries the divisors of the point count from the largest down. A wrong one nearly always fails
+     * within the first few points, so this costs about one pass over the targets.
+     */
+    private static int symmetry(int[] targets, int numPoints, Workspace workspace) {
+        int count = 0;
+        for (int d = 1; (long) d * d <= numPoints; d++) {
+            if (numPoints % d == 0) {
+                count += d * d == numPoints ? 1 : 2;
+            }
+        }
+        if (workspace.divisors.length < count) {
+            workspace.divisors = new int[count];
+        }
+        int[] divisors = workspace.divisors;
+        int low = 0;
+        int high = count;
+        for (int d = 1; (long) d * d <= numPoints; d++) {
+            if (numPoints % d == 0) {
+                divisors[low++] = d;
+                if (d * d != numPoints) {
+                    divisors[--high] = numPoints / d;
+                }
+            }
+        }
+
+        for (int i = count - 1; i > 0; i--) {
+            if (isSymmetric(targets, numPoints, numPoints / divisors[i])) {
+                return divisors[i];
+            }
+        }
+        return 1;
+    }
+
+    private static boolean isSymmetric(int[] targets, int numPoints, int shift) {
+        for (int n = 0, m = shift; n < numPoints; n++, m++) {
+            if (m == numPoints) {
+                m = 0;
+            }
+            int expected = targets[n] + shift;
+            if (expected >= numPoints) {
+                expected -= numPoints;
+            }
+            if (targets[m] != expected) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the histogram bin of every distance up to half the circle. A chord spanning
+     * {@code d} points is {@code sin(pi * d / numPoints)} diameters long, so the bins start at the
+     * distances where that reaches a multiple of 1/{@value #LENGTH_BINS}.
+     */
+    private static byte[] lengthBins(int numPoints, Workspace workspace) {
+        if (workspace.lengthBinsPoints == numPoints) {
+            return workspace.lengthBins;
+        }
+        int size = numPoints / 2 + 1;
+        if (workspace.lengthBins.length < size) {
+            workspace.lengthBins = new byte[size];
+        }
+        byte[] bins = workspace.lengthBins;
+        int from = 0;
+        for (int bin = 0; bin < LENGTH_BINS; bin++) {
+            int to = bin == LENGTH_BINS - 1 ? size
+                    : (int) Math.min(size, Math.ceil(numPoints / Math.PI * Math.asin((bin + 1.0) / LENGTH_BINS)));
+            Arrays.fill(bins, from, Math.max(from, to), (byte) bin);
+            from = Math.max(from, to);
+        }
+        workspace.lengthBinsPoints = numPoints;
+        return bins;
+    }
+
+    public double getTimesTableNumber() {
+        return timesTableNumber;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    /**
+     * Returns the number of cycles of the mapping.
+     *
+     * @return the cycle count, at least 1
+     */
+    public int getCycleCount() {
+        return cycleCount;
+    }
+
+    public int getLongestCycle() {
+        return longestCycle;
+    }
+
+    /**
+     * Returns the number of points that lie on a cycle.
+     *
+     * @return the point count; {@link #getNumPoints()} if the mapping is a permutation
+     */
+    public int getPointsOnCycles() {
+        return pointsOnCycles;
+    }
+
+    /**
+     * Returns the number of points mapped to themselves, the cycles of length 1.
+     *
+     * @return the fixed point count
+     */
+    public int getFixedPoints() {
+        return fixedPoints;
+    }
+
+    public boolean isPermutation() {
+        return pointsOnCycles == numPoints;
+    }
+
+    public int getCusps() {
+        return cusps;
+    }
+
+    /**
+     * Returns the order of the rotational symmetry.
+     *
+     * @return how many turns map the pattern onto itself in one full turn, 1 if none but the full turn
+     */
+    public int getSymmetry() {
+        return symmetry;
+    }
+
+    /**
+     * Returns the number of chords in each length bin, shortest first.
+     *
+     * @return a copy of the histogram
+     */
+    public int[] getLengthHistogram() {
+        return lengthHistogram.clone();
+    }
+
+    public long getAnalysisNanos() {
+        return analysisNanos;
+    }
+
+    /**
+     * Formats the analysis in a few short lines, the histogram as a bar chart.
+     *
+     * @return the analysis as text
+     */
+    public String format() {
+        int peak = 1;
+        for (int count : lengthHistogram) {
+            peak = Math.max(peak, count);
+        }
+        StringBuilder bars = new StringBuilder(LENGTH_BINS);
+        for (int count : lengthHistogram) {
+            // Any bin with chords in it shows at least the lowest bar
+            bars.append(BARS[count == 0 ? 0 : 1 + (int) ((long) count * (BARS.length - 2) / peak)]);
+        }
+        String cycles = isPermutation() ? "Permutation"
+                : String.format("On cycles: %,d of %,d", pointsOnCycles, numPoints);
+        return String.format("Cycles: %,d (longest %,d, fixed %,d)%n%s%nCusps: %d   Symmetry: %d-fold%n"
+                + "Lengths: [%s]", cycleCount, longestCycle, fixedPoints, cycles, cusps, symmetry, bars);
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs {@link PatternAnalysis} on a background thread for the FX thread.
+ * <p>
+ * Works like a {@link ChordWorker}: the FX thread posts the pattern it shows with {@link #request}
+ * and picks up finished analyses with {@link #poll}. Only the latest request counts. While the
+ * animation runs faster than large patterns can be analyzed, the ones in between are skipped and the
+ * results follow the animation as closely as the analysis allows. Asking again for the pattern
+ * analyzed last does nothing.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class PatternAnalyzer implements Closeable {
+
+    private static final class Request {
+        final long ttn;
+        final int numPoints;
+
+        Request(long ttn, int numPoints) {
+            this.ttn = ttn;
+            this.numPoints = numPoints;
+        }
+    }
+
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final AtomicReference<PatternAnalysis> ready = new AtomicReference<>();
+    private final PatternAnalysis.Workspace workspace = new PatternAnalysis.Workspace();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // Only touched by the thread that requests
+    private long requestedTtn = Long.MIN_VALUE;
+    private int requestedPoints;
+
+    /**
+     * Creates the analyzer and starts its thread.
+     */
+    public PatternAnalyzer() {
+        thread = new Thread(this::loop, "pattern-analyzer");
+        thread.setDaemon(true);
+        // Analyses are shown as they come; drawing the frames comes first
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Asks for the analysis of a pattern. Replaces any request the analyzer has not started on yet.
+     *
+     * @param ttn the times table number
+     * @param numPoints the number of points on the circle; nothing is analyzed if it is not positive
+     */
+    public void request(double ttn, int numPoints) {
+        long fixed = FixedTtn.fromDouble(ttn);
+        if (numPoints < 1 || (fixed == requestedTtn && numPoints == requestedPoints)) {
+            return;
+        }
+        requestedTtn = fixed;
+        requestedPoints = numPoints;
+        pending.set(new Request(fixed, numPoints));
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Takes the most recently finished analysis, if there is one.
+     *
+     * @return the analysis, or {@code null} if none finished since the last poll
+     */
+    public PatternAnalysis poll() {
+        return ready.getAndSet(null);
+    }
+
+    private void loop() {
+        while (!closed) {
+            Request request = pending.getAndSet(null);
+            if (request == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            ready.set(PatternAnalysis.analyze(request.ttn, request.numPoints, workspace));
+        }
+    }
+
+    /**
+     * Stops the analyzer thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+    }
+}
@@ -0,0 +1,240 @@
+import java.awt.Color;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streams chords to an output stream as a single-page PDF document.
+ * <p>
+ * The page is as many points wide and high as the image has pixels. Its content stream starts with
+ * a transform that flips the y axis and scales by 1/{@value VectorWriter#PRECISION}, so every
+ * coordinate after that is a plain integer. The stream is deflated on the fly, and its length is
+ * written as a separate object once it is known, so the document is written front to back in one
+ * pass. Paths are stroked every few thousand segments to keep them small enough for viewers. Colors
+ * are written without their alpha; PDF transparency needs a graphics state the app has no use for.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class PdfWriter extends VectorWriter {
+
+    private static final int SEGMENTS_PER_STROKE = 8192;
+
+    // Objects: the catalog, the page tree, the page, its content stream and the length of that stream
+    private static final int CATALOG = 1, PAGES = 2, PAGE = 3, CONTENT = 4, LENGTH = 5;
+
+    private final CountingOutputStream file;
+    private final long[] offsets = new long[LENGTH + 1];
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final DeflaterOutputStream content;
+    private final long contentStart;
+
+    private int x, y;
+    private int segments;
+
+    /**
+     * Writes the document up to the start of the page content.
+     *
+     * @param out the stream to write to; closed together with the writer
+     * @param width the width of the page
+     * @param height the height of the page
+     * @param background the color the page is filled with, or {@code null} to leave it blank
+     * @throws IOException if writing fails
+     */
+    public PdfWriter(OutputStream out, int width, int height, Color background) throws IOException {
+        this(new CountingOutputStream(out), width, height, background);
+    }
+
+    private PdfWriter(CountingOutputStream file, int width, int height, Color background) throws IOException {
+        super(file);
+        this.file = file;
+        // A comment with high bytes marks the file as binary for transfer tools
+        append("%PDF-1.4\n%âãÏÓ\n");
+
+        beginObject(CATALOG);
+        append("<< /Type /Catalog /Pages 2 0 R >>\n");
+        endObject();
+        beginObject(PAGES);
+        append("<< /Type /Pages /Kids [3 0 R] /Count 1 >>\n");
+        endObject();
+        beginObject(PAGE);
+        append("<< /Type /Page /Parent 2 0 R /MediaBox [0 0 ");
+        append(width);
+        append(' ');
+        append(height);
+        append("] /Resources << >> /Contents 4 0 R >>\n");
+        endObject();
+        beginObject(CONTENT);
+        append("<< /Length 5 0 R /Filter /FlateDecode >>\nstream\n");
+        flush();
+        contentStart = file.count;
+
+        content = new DeflaterOutputStream(new FilterOutputStream(file) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                // The file stays open for the objects after the stream
+            }
+        }, deflater, 1 << 16);
+        redirect(content);
+
+        if (background != null) {
+            appendColor(background);
+            append(" rg 0 0 ");
+            append(width);
+            append(' ');
+            append(height);
+            append(" re f\n");
+        }
+        append("0.1 0 0 -0.1 0 ");
+        append(height);
+        append(" cm\n");
+    }
+
+    @Override
+    protected void beginPath(Color color, float lineWidth) throws IOException {
+        append("q ");
+        appendColor(color);
+        append(" RG ");
+        append(Math.round(lineWidth * PRECISION));
+        append(" w\n");
+        segments = 0;
+    }
+
+    @Override
+    protected void moveTo(int x, int y) throws IOException {
+        if (segments >= SEGMENTS_PER_STROKE) {
+            append("S\n");
+            segments = 0;
+        }
+        appendPoint(x, y, 'm');
+    }
+
+    @Override
+    protected void lineTo(int x, int y) throws IOException {
+        if (segments >= SEGMENTS_PER_STROKE) {
+            // Stroke what there is and carry on from the current point
+            append("S\n");
+            appendPoint(this.x, this.y, 'm');
+            segments = 0;
+        }
+        appendPoint(x, y, 'l');
+        segments++;
+    }
+
+    @Override
+    protected void endPath() throws IOException {
+        append(segments > 0 ? "S Q\n" : "n Q\n");
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        redirect(file);
+        try {
+            content.finish();
+        } finally {
+            deflater.end();
+        }
+        long contentLength = file.count - contentStart;
+        append("\nendstream\n");
+        endObject();
+        beginObject(LENGTH);
+        append(contentLength);
+        append('\n');
+        endObject();
+
+        flush();
+        long xref = file.count;
+        append("xref\n0 ");
+        append(LENGTH + 1);
+        append("\n0000000000 65535 f \n");
+        for (int object = 1; object <= LENGTH; object++) {
+            String offset = Long.toString(offsets[object]);
+            for (int pad = offset.length(); pad < 10; pad++) {
+                append('0');
+            }
+            append(offset);
+            append(" 00000 n \n");
+        }
+        append("trailer\n<< /Size ");
+        append(LENGTH + 1);
+        append(" /Root 1 0 R >>\nstartxref\n");
+        append(xref);
+        append("\n%%EOF\n");
+    }
+
+    private void beginObject(int object) throws IOException {
+        flush();
+        offsets[object] = file.count;
+        append(object);
+        append(" 0 obj\n");
+    }
+
+    private void endObject() throws IOException {
+        append("endobj\n");
+    }
+
+    private void appendPoint(int x, int y, char operator) throws IOException {
+        reserve(26);
+        put(x);
+        buffer[length++] = ' ';
+        put(y);
+        buffer[length++] = ' ';
+        buffer[length++] = (byte) operator;
+        buffer[length++] = '\n';
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Appends the red, green and blue components as numbers from 0 to 1, to three decimals.
+     */
+    private void appendColor(Color color) throws IOException {
+        appendComponent(color.getRed());
+        append(' ');
+        appendComponent(color.getGreen());
+        append(' ');
+        appendComponent(color.getBlue());
+    }
+
+    private void appendComponent(int value) throws IOException {
+        int thousandths = Math.round(value * 1000f / 255);
+        if (thousandths == 0 || thousandths == 1000) {
+            append(thousandths == 0 ? '0' : '1');
+            return;
+        }
+        append("0.");
+        append((char) ('0' + thousandths / 100));
+        append((char) ('0' + thousandths / 10 % 10));
+        append((char) ('0' + thousandths % 10));
+    }
+
+    /**
+     * Counts the bytes written to the file, for the offsets in the cross-reference table.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
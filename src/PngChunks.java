@@ -0,0 +1,136 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Low-level helpers for writing PNG chunks. Shared by the encoders that stream PNG data themselves
+ * instead of going through {@link javax.imageio.ImageIO}.
+ *
+ * @author Adam Abusang
+ */
+final class PngChunks {
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /**
+     * Color type for 8-bit RGBA pixels.
+     */
+    static final int COLOR_TYPE_RGBA = 6;
+
+    private PngChunks() {
+    }
+
+    /**
+     * Writes a complete chunk: length, type, data and CRC.
+     *
+     * @param out the stream to write to
+     * @param type the four-letter chunk type
+     * @param data the chunk data
+     * @param off the offset of the data in the array
+     * @param len the length of the data
+     * @throws IOException if writing fails
+     */
+    static void write(OutputStream out, String type, byte[] data, int off, int len) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        writeInt(out, len);
+        out.write(typeBytes);
+        out.write(data, off, len);
+        writeInt(out, (int) crc(typeBytes, data, off, len));
+    }
+
+    static void write(OutputStream out, String type, byte[] data) throws IOException {
+        write(out, type, data, 0, data.length);
+    }
+
+    /**
+     * Computes the CRC of a chunk, which covers the type and the data.
+     */
+    static long crc(byte[] type, byte[] data, int off, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data, off, len);
+        return crc.getValue();
+    }
+
+    /**
+     * Builds the data of an IHDR chunk for 8-bit images without interlacing.
+     *
+     * @param width the image width
+     * @param height the image height
+     * @param colorType the PNG color type
+     * @return the chunk data
+     */
+    static byte[] header(int width, int height, int colorType) {
+        byte[] data = new byte[13];
+        putInt(data, 0, width);
+        putInt(data, 4, height);
+        data[8] = 8;
+        data[9] = (byte) colorType;
+        return data;
+    }
+
+    static void putInt(byte[] buffer, int off, int value) {
+        buffer[off] = (byte) (value >>> 24);
+        buffer[off + 1] = (byte) (value >>> 16);
+        buffer[off + 2] = (byte) (value >>> 8);
+        buffer[off + 3] = (byte) value;
+    }
+
+    static void putShort(byte[] buffer, int off, int value) {
+        buffer[off] = (byte) (value >>> 8);
+        buffer[off + 1] = (byte) value;
+    }
+
+    static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /**
+     * Returns the backing array of an image created by {@link ChordRasterizer#createImage(int, int)},
+     * which holds its ARGB pixels in row-major order.
+     *
+     * @param image the image
+     * @return the pixels, or {@code null} if the image does not store them that way
+     */
+    static int[] backingPixels(BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_ARGB
+                || !(image.getRaster().getDataBuffer() instanceof DataBufferInt)
+                || !(image.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || ((SinglePixelPackedSampleModel) image.getSampleModel()).getScanlineStride() != image.getWidth()
+                || image.getRaster().getSampleModelTranslateX() != 0
+                || image.getRaster().getSampleModelTranslateY() != 0) {
+            return null;
+        }
+        DataBufferInt buffer = (DataBufferInt) image.getRaster().getDataBuffer();
+        return buffer.getOffset() == 0 && buffer.getNumBanks() == 1 ? buffer.getData() : null;
+    }
+
+    /**
+     * Converts one row of ARGB pixels to a filtered PNG scanline: the filter byte (Sub) followed by
+     * the RGBA bytes, each stored as the difference to the byte one pixel to the left.
+     *
+     * @param argb the pixels
+     * @param off the index of the first pixel of the row
+     * @param width the number of pixels in the row
+     * @param line the scanline buffer, at least {@code 1 + 4 * width} bytes long
+     */
+    static void filterRow(int[] argb, int off, int width, byte[] line) {
+        line[0] = 1;
+        int prev = 0;
+        for (int x = 0, p = 1; x < width; x++, p += 4) {
+            int px = argb[off + x];
+            line[p] = (byte) ((px >>> 16) - (prev >>> 16));
+            line[p + 1] = (byte) ((px >>> 8) - (prev >>> 8));
+            line[p + 2] = (byte) (px - prev);
+            line[p + 3] = (byte) ((px >>> 24) - (prev >>> 24));
+            prev = px;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streams a PNG image to an output stream one row at a time.
+ * <p>
+ * Only the current row and a small compression buffer are held in memory, so images far larger
+ * than the heap can be written as long as the rows are produced incrementally.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class PngWriter implements AutoCloseable {
+
+    /**
+     * Compressed data is emitted in IDAT chunks of this size.
+     */
+    private static final int CHUNK_SIZE = 1 << 18;
+
+    private static final int COLOR_TYPE_RGB = 2;
+
+    private final OutputStream out;
+    private final int width, height;
+    private final boolean alpha;
+    private final Deflater deflater;
+    private final DeflaterOutputStream zip;
+    private final byte[] line;
+    private final byte[] previousLine;
+    private int rows;
+
+    /**
+     * Writes the PNG header.
+     *
+     * @param out the stream to write to; closed together with the writer
+     * @param width the image width
+     * @param height the image height
+     * @param alpha whether the alpha channel is stored; without it the pixels are written as RGB
+     * @throws IOException if writing fails
+     */
+    public PngWriter(OutputStream out, int width, int height, boolean alpha) throws IOException {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.alpha = alpha;
+        int bytesPerPixel = alpha ? 4 : 3;
+        this.line = new byte[1 + bytesPerPixel * width];
+        this.previousLine = new byte[line.length];
+
+        out.write(PngChunks.SIGNATURE);
+        PngChunks.write(out, "IHDR", PngChunks.header(width, height, alpha ? PngChunks.COLOR_TYPE_RGBA : COLOR_TYPE_RGB));
+
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        zip = new DeflaterOutputStream(new IdatOutputStream(), deflater, CHUNK_SIZE);
+    }
+
+    /**
+     * Appends the next row of the image.
+     *
+     * @param argb the pixels of the row in ARGB format
+     * @param off the index of the first pixel of the row
+     * @throws IOException if writing fails
+     */
+    public void writeRow(int[] argb, int off) throws IOException {
+        if (rows == height) {
+            throw new IOException("All " + height + " rows were already written");
+        }
+        if (alpha) {
+            PngChunks.filterRow(argb, off, width, line);
+        } else {
+            filterRowRgb(argb, off);
+        }
+        zip.write(line);
+        rows++;
+    }
+
+    /**
+     * Filters a row of RGB pixels with the Up filter, which suits rows of chord diagrams that mostly
+     * repeat the row above.
+     */
+    private void filterRowRgb(int[] argb, int off) {
+        line[0] = 2;
+        for (int x = 0, p = 1; x < width; x++, p += 3) {
+            int px = argb[off + x];
+            byte r = (byte) (px >>> 16);
+            byte g = (byte) (px >>> 8);
+            byte b = (byte) px;
+            line[p] = (byte) (r - previousLine[p]);
+            line[p + 1] = (byte) (g - previousLine[p + 1]);
+            line[p + 2] = (byte) (b - previousLine[p + 2]);
+            previousLine[p] = r;
+            previousLine[p + 1] = g;
+            previousLine[p + 2] = b;
+        }
+    }
+
+    /**
+     * Finishes the image. All rows must have been written.
+     *
+     * @throws IOException if writing fails or rows are missing
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            zip.finish();
+            PngChunks.write(out, "IEND", new byte[0]);
+        } finally {
+            deflater.end();
+            out.close();
+        }
+        if (rows != height) {
+            throw new IOException("Only " + rows + " of " + height + " rows were written");
+        }
+    }
+
+    /**
+     * Wraps everything written to it into IDAT chunks.
+     */
+    private final class IdatOutputStream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > 0) {
+                PngChunks.write(out, "IDAT", b, off, len);
+            }
+        }
+    }
+}
@@ -1,7 +1,3 @@
-import static java.lang.Math.cos;
-import static java.lang.Math.toRadians;
-import static java.lang.StrictMath.sin;
-
 /**
  * Represents a point on a circle.
  * <p>
@@ -79,22 +75,24 @@ public class PointOnCircle {
 
     /**
      * Generates an array of points along the circumference of a circle.
+     * <p>
+     * Point 0 sits at 180 degrees and the others follow evenly spaced. The angles come from the
+     * cached {@link CircleTrig} tables and are indexed by point rather than accumulated, so the array
+     * always holds exactly {@code num} points.
+     * </p>
      *
      * @param radius the radius of the circle
-     * @param num the number of points to be generated
+     * @param num the number of points to be generated; any fraction is dropped
      * @return an array of points on the circle
      */
     public static PointOnCircle[] generatePoints(double radius, double num) {
+        int count = (int) num;
+        CircleTrig trig = CircleTrig.forPoints(count);
 
-        PointOnCircle[] points = new PointOnCircle[(int)num];
-        int i = 0;
-        double pointSeparation = 360.0 / num;
-
-        for (double angle = 180; angle < 540; angle += pointSeparation) {
-            double x = cos(toRadians(angle)) * radius;
-            double y = sin(toRadians(angle)) * radius;
-            points[i] = new PointOnCircle(i, x, y);
-            i++;
+        PointOnCircle[] points = new PointOnCircle[count];
+        for (int i = 0; i < count; i++) {
+            // cos(PI + a) = -cos(a), sin(PI + a) = -sin(a)
+            points[i] = new PointOnCircle(i, -trig.cos(i) * radius, -trig.sin(i) * radius);
         }
         return points;
     }
@@ -0,0 +1,356 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The built-in presets together with the presets the user saved, looked up by times table number.
+ * <p>
+ * User presets are kept in a plain text file, one per line: the times table number, the number of
+ * points, the name and the description, separated by tabs. Lines starting with {@code #} are
+ * comments. The file is {@code ~/.timestable/presets.tsv} unless the {@value #FILE_PROPERTY} system
+ * property names another one. A user preset with the same times table number as a built-in one
+ * replaces it.
+ * </p>
+ * <p>
+ * The presets are held in an immutable {@link Index} sorted by times table number, so the preset
+ * nearest to a number is found by binary search without allocating, however many there are. The
+ * default library is loaded the first time it is used. A daemon thread watches the file and swaps in
+ * a new index whenever it changes, so edits made outside the app show up without a restart;
+ * listeners are told on that thread.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class PresetLibrary implements Closeable {
+
+    /**
+     * System property naming the file user presets are kept in.
+     */
+    public static final String FILE_PROPERTY = "timestable.presets";
+
+    /**
+     * How close a times table number must be to a preset to be recognized as it.
+     */
+    public static final double TOLERANCE = 0.01;
+
+    /**
+     * The name given to times table numbers that match no preset.
+     */
+    public static final String CUSTOM_PATTERN = "Custom Pattern";
+
+    private static final String HEADER = "# Times table presets: ttn<TAB>points<TAB>name<TAB>description";
+
+    /**
+     * An immutable set of presets sorted by times table number.
+     */
+    public static final class Index {
+        private final double[] ttns;
+        private final PresetPatterns.Pattern[] patterns;
+
+        private Index(List<PresetPatterns.Pattern> presets) {
+            PresetPatterns.Pattern[] sorted = presets.toArray(new PresetPatterns.Pattern[0]);
+            // Stable, so of two presets with the same number the one added last comes last and wins
+            Arrays.sort(sorted, Comparator.comparingDouble(PresetPatterns.Pattern::getTimesTableNumber));
+            int count = 0;
+            for (PresetPatterns.Pattern pattern : sorted) {
+                if (count > 0 && sorted[count - 1].getTimesTableNumber() == pattern.getTimesTableNumber()) {
+                    count--;
+                }
+                sorted[count++] = pattern;
+            }
+            patterns = Arrays.copyOf(sorted, count);
+            ttns = new double[count];
+            for (int i = 0; i < count; i++) {
+                ttns[i] = patterns[i].getTimesTableNumber();
+            }
+        }
+
+        /**
+         * Finds the preset nearest to a times table number.
+         *
+         * @param ttn the times table number
+         * @return the nearest preset less than {@link #TOLERANCE} away, or {@code null} if there is none
+         */
+        public PresetPatterns.Pattern nearest(double ttn) {
+            int i = Arrays.binarySearch(ttns, ttn);
+            if (i >= 0) {
+                return patterns[i];
+            }
+            int above = -i - 1;
+            int below = above - 1;
+            int best;
+            if (above == ttns.length) {
+                best = below;
+            } else if (below < 0) {
+                best = above;
+            } else {
+                best = ttn - ttns[below] <= ttns[above] - ttn ? below : above;
+            }
+            return best >= 0 && Math.abs(ttns[best] - ttn) < TOLERANCE ? patterns[best] : null;
+        }
+
+        /**
+         * Returns the number of presets.
+         *
+         * @return the preset count
+         */
+        public int size() {
+            return patterns.length;
+        }
+
+        /**
+         * Returns a preset by its position in times table number order.
+         *
+         * @param i the position, below {@link #size()}
+         * @return the preset
+         */
+        public PresetPatterns.Pattern get(int i) {
+            return patterns[i];
+        }
+    }
+
+    private static final class Holder {
+        static final PresetLibrary DEFAULT = new PresetLibrary(defaultFile());
+    }
+
+    private final Path file;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile Index index;
+    private WatchService watchService;
+
+    /**
+     * Loads a library and starts watching its file, if the directory it is in exists.
+     *
+     * @param file the file user presets are kept in; it need not exist
+     */
+    public PresetLibrary(Path file) {
+        this.file = file.toAbsolutePath();
+        reload();
+        watch();
+    }
+
+    /**
+     * Returns the library of the {@value #FILE_PROPERTY} file, loading it on first use.
+     *
+     * @return the shared library
+     */
+    public static PresetLibrary getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    private static Path defaultFile() {
+        String configured = System.getProperty(FILE_PROPERTY);
+        if (configured != null && !configured.isEmpty()) {
+            return Paths.get(configured);
+        }
+        return Paths.get(System.getProperty("user.home"), ".timestable", "presets.tsv");
+    }
+
+    /**
+     * Returns the presets as of the last load. The index never changes; a reload replaces it.
+     *
+     * @return the current index
+     */
+    public Index getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the name of the preset nearest to a times table number.
+     *
+     * @param ttn the times table number
+     * @return the preset name, or {@value #CUSTOM_PATTERN} if no preset is close enough
+     */
+    public String identify(double ttn) {
+        PresetPatterns.Pattern pattern = index.nearest(ttn);
+        return pattern == null ? CUSTOM_PATTERN : pattern.getName();
+    }
+
+    /**
+     * Returns the file user presets are kept in.
+     *
+     * @return the file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Registers a listener run after every reload, on the thread that reloaded.
+     *
+     * @param listener the listener
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Appends a preset to the file and reloads the library.
+     *
+     * @param pattern the preset to save
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void add(PresetPatterns.Pattern pattern) throws IOException {
+        Path directory = file.getParent();
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        boolean created = !Files.exists(file);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if (created) {
+                writer.write(HEADER);
+                writer.newLine();
+            }
+            writer.write(Double.toString(pattern.getTimesTableNumber()));
+            writer.write('\t');
+            writer.write(Integer.toString(pattern.getNumPoints()));
+            writer.write('\t');
+            writer.write(field(pattern.getName()));
+            writer.write('\t');
+            writer.write(field(pattern.getDescription()));
+            writer.newLine();
+        }
+        reload();
+        watch();
+    }
+
+    private static String field(String text) {
+        return text == null ? "" : text.replaceAll("[\\t\\r\\n]+", " ").trim();
+    }
+
+    /**
+     * Reads the file again and swaps in a new index. A missing file leaves only the built-in
+     * presets, and malformed lines are skipped.
+     */
+    public synchronized void reload() {
+        List<PresetPatterns.Pattern> presets = new ArrayList<>(Arrays.asList(PresetPatterns.getAllPresets()));
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                PresetPatterns.Pattern pattern = parse(line);
+                if (pattern == null) {
+                    skipped++;
+                } else {
+                    presets.add(pattern);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // No user presets yet
+        } catch (IOException e) {
+            System.err.println("Could not read presets from " + file + ": " + e.getMessage());
+        }
+        if (skipped > 0) {
+            System.err.println("Skipped " + skipped + " malformed preset lines in " + file);
+        }
+        index = new Index(presets);
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private static PresetPatterns.Pattern parse(String line) {
+        String[] fields = line.split("\t", 4);
+        if (fields.length < 3 || fields[2].isBlank()) {
+            return null;
+        }
+        try {
+            double ttn = Double.parseDouble(fields[0].trim());
+            int numPoints = Integer.parseInt(fields[1].trim());
+            if (!Double.isFinite(ttn) || ttn < 0 || numPoints <= 0) {
+                return null;
+            }
+            return new PresetPatterns.Pattern(fields[2].trim(), ttn, numPoints,
+                    fields.length > 3 ? fields[3].trim() : "");
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts the watcher thread, unless it runs already or there is no directory to watch yet.
+     */
+    private synchronized void watch() {
+        Path directory = file.getParent();
+        if (watchService != null || directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            System.err.println("Presets will not be reloaded when " + file + " changes: " + e.getMessage());
+            watchService = null;
+            return;
+        }
+        WatchService service = watchService;
+        Thread watcher = new Thread(() -> watchLoop(service), "preset-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop(WatchService service) {
+        Path name = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                // Editors often write a file in several steps; one reload per batch of events
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                }
+                if (changed) {
+                    reload();
+                }
+                if (!key.reset()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+        // The directory went away; saving a preset creates it again and starts a new watcher
+        synchronized (this) {
+            if (watchService == service) {
+                watchService = null;
+            }
+        }
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+            watchService = null;
+        }
+    }
+}
@@ -122,17 +122,13 @@ public class PresetPatterns {
     }
 
     /**
-     * Identify pattern name based on times table number.
+     * Identify pattern name based on times table number, among the built-in presets and the ones
+     * saved in the {@link PresetLibrary}.
      * 
      * @param ttn times table number
      * @return pattern name or "Custom Pattern" if not recognized
      */
     public static String identifyPattern(double ttn) {
-        for (Pattern pattern : getAllPresets()) {
-            if (Math.abs(pattern.getTimesTableNumber() - ttn) < 0.01) {
-                return pattern.getName();
-            }
-        }
-        return "Custom Pattern";
+        return PresetLibrary.getDefault().identify(ttn);
     }
 }
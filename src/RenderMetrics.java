@@ -0,0 +1,346 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Collects timings of the render loop.
+ * <p>
+ * Stage timings can be recorded from any thread. Frame intervals, presented frames and chord counts
+ * are recorded on the FX thread, which also calls {@link #snapshot(long)} a few times per second to turn
+ * the raw numbers into the values shown by the performance overlay. The same values are published
+ * as the {@code timestable:type=RenderMetrics} MBean, and every presented frame can be emitted as a
+ * {@link FrameEvent} for JDK Flight Recorder.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+
+    /**
+     * The parts of a frame that are timed separately.
+     */
+    public enum Stage {
+        /** Mapping the chords and accumulating their density coverage, on the chord worker thread. */
+        GEOMETRY,
+        /** Issuing the draw calls or building the line nodes. */
+        DRAW,
+        /** Working out the render state and updating the labels. */
+        UPDATE,
+        /** CSS and layout of the scene graph during a pulse. */
+        SYNC
+    }
+
+    public static final String OBJECT_NAME = "timestable:type=RenderMetrics";
+
+    /**
+     * Number of frame intervals kept for the percentiles.
+     */
+    private static final int FRAME_WINDOW = 240;
+
+    private final Map<Stage, LongAdder> stageNanos = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> stageCounts = new EnumMap<>(Stage.class);
+
+    // Touched only by the FX thread
+    private final long[] frameIntervals = new long[FRAME_WINDOW];
+    private final long[] sorted = new long[FRAME_WINDOW];
+    private int frameIndex;
+    private int frameSamples;
+    private long lastPulse = -1;
+    private long presentedFrames;
+    private long lastSnapshot = -1;
+    // Bytes allocated so far by each live thread, by thread ID, as of the last snapshot
+    private Map<Long, Long> threadAllocatedBytes = new HashMap<>();
+
+    // Published values, read by JMX from other threads
+    private volatile double fps;
+    private volatile double frameTimeP50, frameTimeP95, frameTimeP99;
+    private volatile double[] stageMillis = new double[Stage.values().length];
+    private volatile int chordCount;
+    private volatile int skippedChordCount;
+    private volatile double allocationRate;
+    private volatile long droppedFrames;
+    private volatile long frameCacheHits, frameCacheMisses;
+    private volatile double frameCacheMB;
+
+    public RenderMetrics() {
+        for (Stage stage : Stage.values()) {
+            stageNanos.put(stage, new LongAdder());
+            stageCounts.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * JDK Flight Recorder event for one frame put on screen.
+     */
+    @Name("timestable.Frame")
+    @Label("Frame")
+    @Category("Times Table")
+    @Description("A frame of the visualization put on screen")
+    public static class FrameEvent extends Event {
+        @Label("Times Table Number")
+        public double timesTableNumber;
+
+        @Label("Points")
+        public int numPoints;
+
+        @Label("Chords")
+        public int chordCount;
+
+        @Label("Skipped Chords")
+        @Description("Degenerate and duplicate chords left out of the frame")
+        public int skippedChordCount;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server. Failures are ignored: the metrics are
+     * a diagnostic aid and must never stop the application.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Render metrics not available over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records how long a stage took. Safe to call from any thread.
+     *
+     * @param stage the stage
+     * @param nanos the duration in nanoseconds
+     */
+    public void recordStage(Stage stage, long nanos) {
+        stageNanos.get(stage).add(nanos);
+        stageCounts.get(stage).increment();
+    }
+
+    /**
+     * Records the start of an animation pulse. Call once per pulse on the FX thread.
+     *
+     * @param nowNanos the pulse timestamp
+     */
+    public void recordPulse(long nowNanos) {
+        if (lastPulse >= 0) {
+            frameIntervals[frameIndex] = nowNanos - lastPulse;
+            frameIndex = (frameIndex + 1) % FRAME_WINDOW;
+            frameSamples = Math.min(frameSamples + 1, FRAME_WINDOW);
+        }
+        lastPulse = nowNanos;
+    }
+
+    /**
+     * Records that a frame was put on screen. Call on the FX thread.
+     *
+     * @param chords the number of chords in the frame
+     * @param skipped the number of degenerate and duplicate chords left out of the frame
+     */
+    public void recordPresented(int chords, int skipped) {
+        presentedFrames++;
+        chordCount = chords;
+        skippedChordCount = skipped;
+    }
+
+    /**
+     * Records the total number of frames dropped so far.
+     *
+     * @param dropped the dropped frame count
+     */
+    public void recordDropped(long dropped) {
+        droppedFrames = dropped;
+    }
+
+    /**
+     * Records the state of the frame cache.
+     *
+     * @param cache the frame cache of the window
+     */
+    public void recordFrameCache(FrameCache cache) {
+        frameCacheHits = cache.getHits();
+        frameCacheMisses = cache.getMisses();
+        frameCacheMB = cache.getSizeBytes() / (1024.0 * 1024.0);
+    }
+
+    /**
+     * Updates the published values from what was recorded since the previous snapshot.
+     * Call on the FX thread.
+     *
+     * @param nowNanos the current time
+     */
+    public void snapshot(long nowNanos) {
+        long allocated = allocatedSinceLastSnapshot();
+        if (lastSnapshot >= 0) {
+            double seconds = (nowNanos - lastSnapshot) / 1e9;
+            fps = presentedFrames / seconds;
+            if (allocated >= 0) {
+                allocationRate = allocated / seconds / (1024 * 1024);
+            }
+        }
+        lastSnapshot = nowNanos;
+        presentedFrames = 0;
+
+        int n = frameSamples;
+        System.arraycopy(frameIntervals, 0, sorted, 0, n);
+        Arrays.sort(sorted, 0, n);
+        frameTimeP50 = percentile(n, 0.50);
+        frameTimeP95 = percentile(n, 0.95);
+        frameTimeP99 = percentile(n, 0.99);
+
+        double[] millis = new double[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            long count = stageCounts.get(stage).sumThenReset();
+            long nanos = stageNanos.get(stage).sumThenReset();
+            millis[stage.ordinal()] = count == 0 ? 0.0 : nanos / 1e6 / count;
+        }
+        stageMillis = millis;
+    }
+
+    private double percentile(int n, double p) {
+        if (n == 0) {
+            return 0;
+        }
+        return sorted[Math.min(n - 1, (int) Math.ceil(p * n) - 1)] / 1e6;
+    }
+
+    /**
+     * Returns the bytes allocated by all live threads since the previous call: the FX thread, the
+     * chord worker, the recorder and any other. A thread that ended in between is missed for its
+     * last interval, one that started in between counts in full.
+     *
+     * @return the allocated bytes, or -1 if the JVM does not measure allocation per thread
+     */
+    private long allocatedSinceLastSnapshot() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+        if (!allocation.isThreadAllocatedMemorySupported() || !allocation.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = allocation.getThreadAllocatedBytes(ids);
+        Map<Long, Long> current = new HashMap<>(ids.length * 2);
+        long total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            // -1 for a thread that ended since the IDs were taken
+            if (bytes[i] < 0) {
+                continue;
+            }
+            current.put(ids[i], bytes[i]);
+            Long before = threadAllocatedBytes.get(ids[i]);
+            total += bytes[i] - (before == null ? 0 : before);
+        }
+        threadAllocatedBytes = current;
+        return total;
+    }
+
+    /**
+     * Formats the published values for the performance overlay.
+     *
+     * @return a multi-line summary
+     */
+    public String format() {
+        return String.format(Locale.ROOT,
+                "FPS %.1f   frame p50 %.1f ms  p95 %.1f ms  p99 %.1f ms%n"
+                        + "geometry %.2f ms  draw %.2f ms  update %.2f ms  sync %.2f ms%n"
+                        + "chords %,d (%,d skipped)   alloc %.1f MB/s   dropped %d%n"
+                        + "frame cache %d hits  %d misses  %.1f MB",
+                fps, frameTimeP50, frameTimeP95, frameTimeP99,
+                getGeometryMillis(), getDrawMillis(), getUpdateMillis(), getSyncMillis(),
+                chordCount, skippedChordCount, allocationRate, droppedFrames,
+                frameCacheHits, frameCacheMisses, frameCacheMB);
+    }
+
+    @Override
+    public double getFramesPerSecond() {
+        return fps;
+    }
+
+    @Override
+    public double getFrameTimeP50Millis() {
+        return frameTimeP50;
+    }
+
+    @Override
+    public double getFrameTimeP95Millis() {
+        return frameTimeP95;
+    }
+
+    @Override
+    public double getFrameTimeP99Millis() {
+        return frameTimeP99;
+    }
+
+    @Override
+    public double getGeometryMillis() {
+        return stageMillis[Stage.GEOMETRY.ordinal()];
+    }
+
+    @Override
+    public double getDrawMillis() {
+        return stageMillis[Stage.DRAW.ordinal()];
+    }
+
+    @Override
+    public double getUpdateMillis() {
+        return stageMillis[Stage.UPDATE.ordinal()];
+    }
+
+    @Override
+    public double getSyncMillis() {
+        return stageMillis[Stage.SYNC.ordinal()];
+    }
+
+    @Override
+    public int getChordCount() {
+        return chordCount;
+    }
+
+    @Override
+    public int getSkippedChordCount() {
+        return skippedChordCount;
+    }
+
+    @Override
+    public double getAllocationRateMBPerSecond() {
+        return allocationRate;
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public long getFrameCacheHits() {
+        return frameCacheHits;
+    }
+
+    @Override
+    public long getFrameCacheMisses() {
+        return frameCacheMisses;
+    }
+
+    @Override
+    public double getFrameCacheMB() {
+        return frameCacheMB;
+    }
+}
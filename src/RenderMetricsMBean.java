@@ -0,0 +1,38 @@
+/**
+ * Management interface of {@link RenderMetrics}, published over JMX as
+ * {@value RenderMetrics#OBJECT_NAME}. Timings are averages over the last snapshot interval.
+ *
+ * @author Adam Abusang
+ */
+public interface RenderMetricsMBean {
+
+    double getFramesPerSecond();
+
+    double getFrameTimeP50Millis();
+
+    double getFrameTimeP95Millis();
+
+    double getFrameTimeP99Millis();
+
+    double getGeometryMillis();
+
+    double getDrawMillis();
+
+    double getUpdateMillis();
+
+    double getSyncMillis();
+
+    int getChordCount();
+
+    int getSkippedChordCount();
+
+    double getAllocationRateMBPerSecond();
+
+    long getDroppedFrames();
+
+    long getFrameCacheHits();
+
+    long getFrameCacheMisses();
+
+    double getFrameCacheMB();
+}
@@ -0,0 +1,551 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Headless HTTP server rendering times table frames on request.
+ * <p>
+ * {@code GET /render?ttn=2.5&points=360&size=512&color=ff0000&bg=ffffff&format=png} answers with the
+ * frame as a PNG, or as an SVG with {@code format=svg}. Every parameter is optional. A frame is fully
+ * decided by its parameters, with the times table number rounded to {@link FixedTtn} millionths, so
+ * responses carry a strong ETag derived from them and may be cached by clients and proxies; a request
+ * with a matching {@code If-None-Match} is answered with 304 without rendering anything.
+ * </p>
+ * <p>
+ * Rendered frames are kept in an LRU cache bounded by memory. Concurrent requests for a frame that is
+ * still being rendered wait for that render instead of starting their own. At most
+ * {@code --max-concurrent} frames are rendered at once; a request that cannot get a turn within a
+ * second is answered with 503 and a {@code Retry-After} header, so a burst degrades into quick
+ * refusals rather than an ever growing queue. {@code GET /stats} reports the counters as text.
+ * </p>
+ * <pre>
+ * java -cp out RenderServer --port 8080 --cache-mb 64
+ * </pre>
+ *
+ * @author Adam Abusang
+ */
+public class RenderServer {
+
+    private static final String ETAG_VERSION = "v1-";
+    private static final long MAX_AGE_SECONDS = 86400;
+    private static final long PERMIT_WAIT_MS = 1000;
+    private static final long RENDER_WAIT_MS = 30_000;
+
+    /**
+     * A frame as parsed from the query string.
+     */
+    private static final class FrameRequest {
+        long ttn = FixedTtn.fromDouble(2);
+        int numPoints = 360;
+        int size = 512;
+        Color color = Color.RED;
+        Color background = Color.WHITE;
+        boolean svg;
+
+        /**
+         * Returns a key naming exactly the image the request renders.
+         */
+        String key() {
+            return (svg ? "svg" : "png") + '/' + size + '/' + numPoints + '/' + ttn + '/'
+                    + Integer.toHexString(color.getRGB()) + '/'
+                    + (background == null ? "none" : Integer.toHexString(background.getRGB()));
+        }
+    }
+
+    /**
+     * A rendered frame, ready to be sent.
+     */
+    private static final class Response {
+        final byte[] body;
+        final String contentType;
+
+        Response(byte[] body, String contentType) {
+            this.body = body;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Thrown when no render permit became free in time.
+     */
+    private static final class SaturatedException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        SaturatedException() {
+            super("too many renders in progress", null, false, false);
+        }
+    }
+
+    private int port = 8080;
+    private int threads = 64;
+    private int maxConcurrent = Runtime.getRuntime().availableProcessors();
+    private long cacheBytes = 64L * 1024 * 1024;
+    private int maxSize = 4096;
+    private int maxPoints = 1_000_000;
+
+    private Semaphore renderPermits;
+    private final LinkedHashMap<String, Response> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    private final ConcurrentHashMap<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong badRequests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        RenderServer server = new RenderServer();
+        try {
+            server.parseArgs(args);
+            server.start();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println("Failed to start the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: RenderServer [options]");
+        System.err.println("  --port <n>            port to listen on (default 8080)");
+        System.err.println("  --threads <n>         request threads where virtual threads are unavailable");
+        System.err.println("                        (default 64)");
+        System.err.println("  --max-concurrent <n>  frames rendered at once (default: number of cores)");
+        System.err.println("  --cache-mb <mb>       memory for rendered frames, 0 disables the cache (default 64)");
+        System.err.println("  --max-size <px>       largest image size accepted (default 4096)");
+        System.err.println("  --max-points <n>      largest point count accepted (default 1000000)");
+        System.err.println();
+        System.err.println("Endpoints:");
+        System.err.println("  GET /render?ttn=2&points=360&size=512&color=ff0000&bg=ffffff|none&format=png|svg");
+        System.err.println("  GET /stats");
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--help")) {
+                printUsage();
+                System.exit(0);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            try {
+                switch (option) {
+                    case "--port":
+                        port = Integer.parseInt(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--max-concurrent":
+                        maxConcurrent = Integer.parseInt(value);
+                        break;
+                    case "--cache-mb":
+                        cacheBytes = Long.parseLong(value) * 1024 * 1024;
+                        break;
+                    case "--max-size":
+                        maxSize = Integer.parseInt(value);
+                        break;
+                    case "--max-points":
+                        maxPoints = Integer.parseInt(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("--port must be between 0 and 65535");
+        }
+        if (threads < 1 || maxConcurrent < 1) {
+            throw new IllegalArgumentException("--threads and --max-concurrent must be positive");
+        }
+        if (cacheBytes < 0) {
+            throw new IllegalArgumentException("--cache-mb must not be negative");
+        }
+        if (maxSize < 1 || maxPoints < 1) {
+            throw new IllegalArgumentException("--max-size and --max-points must be positive");
+        }
+    }
+
+    private void start() throws IOException {
+        renderPermits = new Semaphore(maxConcurrent);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/stats", this::handleStats);
+        ExecutorService executor = createExecutor();
+        server.setExecutor(executor);
+        server.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            executor.shutdownNow();
+        }, "render-server-shutdown"));
+        System.out.printf(Locale.ROOT, "Serving frames on http://localhost:%d/render (%d concurrent renders)%n",
+                server.getAddress().getPort(), maxConcurrent);
+    }
+
+    /**
+     * Handles every request on its own virtual thread where the runtime has them (Java 21 and later),
+     * and on a fixed pool of {@code --threads} platform threads otherwise. The pool is much larger
+     * than the number of render permits, so waiting requests reach the permit timeout and are refused
+     * quickly instead of queueing unboundedly in front of the executor.
+     */
+    private ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            if (!isReadOnly(exchange)) {
+                return;
+            }
+
+            FrameRequest request;
+            try {
+                request = parseQuery(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                badRequests.incrementAndGet();
+                sendText(exchange, 400, e.getMessage() + "\n");
+                return;
+            }
+
+            String key = request.key();
+            String etag = etagOf(key);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Cache-Control", "public, max-age=" + MAX_AGE_SECONDS);
+            if (matchesEtag(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+                notModified.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            Response response;
+            try {
+                response = lookup(key, request);
+            } catch (SaturatedException e) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.getResponseHeaders().remove("Cache-Control");
+                sendText(exchange, 503, e.getMessage() + "\n");
+                return;
+            } catch (IOException | RuntimeException e) {
+                // Answer with a status line rather than dropping the connection; the error is not cacheable
+                failures.incrementAndGet();
+                exchange.getResponseHeaders().remove("ETag");
+                exchange.getResponseHeaders().remove("Cache-Control");
+                sendText(exchange, 500, "render failed: " + e.getMessage() + "\n");
+                return;
+            }
+            send(exchange, 200, response.contentType, response.body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try {
+            if (!isReadOnly(exchange)) {
+                return;
+            }
+            long rendered = renders.get();
+            int entries;
+            long bytes;
+            synchronized (cache) {
+                entries = cache.size();
+                bytes = cachedBytes;
+            }
+            String stats = String.format(Locale.ROOT,
+                    "requests %d%ncache.hits %d%nnot.modified %d%ncoalesced %d%nrenders %d%n"
+                            + "render.ms.avg %.2f%nrejected %d%nbad.requests %d%nfailures %d%n"
+                            + "cache.entries %d%ncache.mb %.1f%ncache.budget.mb %.1f%nin.flight %d%n",
+                    requests.get(), cacheHits.get(), notModified.get(), coalesced.get(), rendered,
+                    rendered == 0 ? 0.0 : renderNanos.get() / 1e6 / rendered, rejected.get(), badRequests.get(),
+                    failures.get(),
+                    entries, bytes / (1024.0 * 1024.0), cacheBytes / (1024.0 * 1024.0), inFlight.size());
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            sendText(exchange, 200, stats);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Answers anything but GET and HEAD with 405.
+     *
+     * @return {@code true} if the request may be served
+     */
+    private static boolean isReadOnly(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        if (method.equals("GET") || method.equals("HEAD")) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+        sendText(exchange, 405, "only GET and HEAD are supported\n");
+        return false;
+    }
+
+    /**
+     * Returns the frame for a key from the cache, from a render already in progress, or renders it.
+     */
+    private Response lookup(String key, FrameRequest request) throws IOException, SaturatedException {
+        synchronized (cache) {
+            Response cached = cache.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        CompletableFuture<Response> own = new CompletableFuture<>();
+        CompletableFuture<Response> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+
+        try {
+            if (!renderPermits.tryAcquire(PERMIT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                SaturatedException saturated = new SaturatedException();
+                own.completeExceptionally(saturated);
+                throw saturated;
+            }
+            try {
+                long start = System.nanoTime();
+                Response response = render(request);
+                renderNanos.addAndGet(System.nanoTime() - start);
+                renders.incrementAndGet();
+                store(key, response);
+                own.complete(response);
+                return response;
+            } finally {
+                renderPermits.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            own.completeExceptionally(e);
+            throw new IOException("interrupted while waiting to render", e);
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    private static Response await(CompletableFuture<Response> running) throws IOException, SaturatedException {
+        try {
+            return running.get(RENDER_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a render", e);
+        } catch (TimeoutException e) {
+            throw new SaturatedException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SaturatedException) {
+                throw (SaturatedException) e.getCause();
+            }
+            throw new IOException("render failed", e.getCause());
+        }
+    }
+
+    private void store(String key, Response response) {
+        long size = response.body.length;
+        if (size > cacheBytes) {
+            return;
+        }
+        synchronized (cache) {
+            Response previous = cache.put(key, response);
+            if (previous != null) {
+                cachedBytes -= previous.body.length;
+            }
+            cachedBytes += size;
+            Iterator<Response> eldest = cache.values().iterator();
+            while (cachedBytes > cacheBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().body.length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private Response render(FrameRequest request) throws IOException {
+        double radius = request.size * Main.RADIUS / Main.HEIGHT;
+        ChordGeometry geometry = ChordGeometry.forCircle(radius, request.numPoints,
+                request.size / 2.0, request.size / 2.0);
+        ChordBuffer chords = geometry.mapFixed(request.ttn, new ChordBuffer());
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(request.svg ? 1 << 16 : 1 << 14);
+        if (request.svg) {
+            try (SvgWriter svg = new SvgWriter(body, request.size, request.size, request.background)) {
+                svg.writeChords(chords, request.color, 1);
+            }
+            return new Response(body.toByteArray(), "image/svg+xml");
+        }
+
+        BufferedImage image = ChordRasterizer.createImage(request.size, request.size);
+        new ChordRasterizer(request.background, true).render(chords, request.color, image);
+        int[] argb = PngChunks.backingPixels(image);
+        try (PngWriter png = new PngWriter(body, request.size, request.size, request.background == null)) {
+            for (int y = 0; y < request.size; y++) {
+                png.writeRow(argb, y * request.size);
+            }
+        }
+        return new Response(body.toByteArray(), "image/png");
+    }
+
+    private FrameRequest parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query != null && !query.isEmpty()) {
+            for (String pair : query.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+                String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+                params.put(name, value);
+            }
+        }
+
+        FrameRequest request = new FrameRequest();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            String name = param.getKey();
+            String value = param.getValue();
+            try {
+                switch (name) {
+                    case "ttn":
+                        double ttn = Double.parseDouble(value);
+                        if (!Double.isFinite(ttn) || Math.abs(ttn) > 1e9) {
+                            throw new IllegalArgumentException("ttn out of range: " + value);
+                        }
+                        request.ttn = FixedTtn.fromDouble(ttn);
+                        break;
+                    case "points":
+                        request.numPoints = Integer.parseInt(value);
+                        break;
+                    case "size":
+                        request.size = Integer.parseInt(value);
+                        break;
+                    case "color":
+                        request.color = parseColor(value);
+                        break;
+                    case "bg":
+                        request.background = value.equalsIgnoreCase("none") ? null : parseColor(value);
+                        break;
+                    case "format":
+                        if (!value.equals("png") && !value.equals("svg")) {
+                            throw new IllegalArgumentException("format must be png or svg");
+                        }
+                        request.svg = value.equals("svg");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown parameter: " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid value for " + name + ": " + value);
+            }
+        }
+
+        if (request.numPoints < 1 || request.numPoints > maxPoints) {
+            throw new IllegalArgumentException("points must be between 1 and " + maxPoints);
+        }
+        if (request.size < 1 || request.size > maxSize) {
+            throw new IllegalArgumentException("size must be between 1 and " + maxSize);
+        }
+        return request;
+    }
+
+    private static Color parseColor(String value) {
+        String hex = value.startsWith("#") ? value.substring(1) : value;
+        if (hex.length() != 6) {
+            throw new NumberFormatException(value);
+        }
+        return new Color(Integer.parseInt(hex, 16));
+    }
+
+    /**
+     * Derives the ETag of a frame from its key with 64-bit FNV-1a. The version prefix changes
+     * whenever the renderer starts drawing frames differently, invalidating every cached copy.
+     */
+    private static String etagOf(String key) {
+        long hash = 0xcbf29ce484222325L;
+        String versioned = ETAG_VERSION + key;
+        for (int i = 0; i < versioned.length(); i++) {
+            hash ^= versioned.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return '"' + Long.toHexString(hash) + '"';
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        send(exchange, status, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        if (exchange.getRequestMethod().equals("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.Arrays;
+import java.util.Objects;
+
+import javafx.scene.paint.Color;
+
+/**
+ * Snapshot of everything that determines what the visualization looks like.
+ * <p>
+ * Comparing the state of the next frame with the state of the frame on screen tells the renderer
+ * how much work is actually needed: nothing at all, only restyling the existing chords, or mapping
+ * and drawing the chords again. Equal states draw identical frames, which makes a state the key of
+ * the {@link FrameCache}.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public final class RenderState {
+
+    /**
+     * The smallest update that brings the screen from one state to another.
+     */
+    public enum Change {
+        /** Nothing visible changed, the frame can be skipped. */
+        NONE,
+        /** Only colors or the density tone map changed, the existing chords can be restyled. */
+        STYLE,
+        /** The chords themselves changed and have to be mapped and drawn again. */
+        GEOMETRY
+    }
+
+    private final double timesTableNumber;
+    private final int numPoints;
+    private final double radius;
+    private final Color color;
+    private final ThemeManager.Theme theme;
+    private final Visualization.RenderMode renderMode;
+    private final DensityRenderer.ToneMap toneMap;
+    private final Layer[] layers;
+
+    public RenderState(double timesTableNumber, int numPoints, double radius, Color color,
+            ThemeManager.Theme theme, Visualization.RenderMode renderMode, DensityRenderer.ToneMap toneMap,
+            Layer[] layers) {
+        this.timesTableNumber = timesTableNumber;
+        this.numPoints = numPoints;
+        this.radius = radius;
+        this.color = color;
+        this.theme = theme;
+        this.renderMode = renderMode;
+        this.toneMap = toneMap;
+        this.layers = layers;
+    }
+
+    /**
+     * Works out the update needed to go from a previous state to this one.
+     *
+     * @param previous the state currently on screen, or {@code null} if nothing was drawn yet
+     * @return the kind of update needed
+     */
+    public Change changeFrom(RenderState previous) {
+        if (previous == null
+                || Double.compare(timesTableNumber, previous.timesTableNumber) != 0
+                || numPoints != previous.numPoints
+                || Double.compare(radius, previous.radius) != 0
+                || renderMode != previous.renderMode
+                || !Arrays.equals(layers, previous.layers)) {
+            return Change.GEOMETRY;
+        }
+        if (!color.equals(previous.color) || theme != previous.theme || toneMap != previous.toneMap) {
+            return Change.STYLE;
+        }
+        return Change.NONE;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof RenderState)) {
+            return false;
+        }
+        RenderState state = (RenderState) other;
+        return changeFrom(state) == Change.NONE;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(timesTableNumber, numPoints, radius, color, theme, renderMode, toneMap)
+                * 31 + Arrays.hashCode(layers);
+    }
+
+    public double getTimesTableNumber() {
+        return timesTableNumber;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public ThemeManager.Theme getTheme() {
+        return theme;
+    }
+
+    public Visualization.RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public DensityRenderer.ToneMap getToneMap() {
+        return toneMap;
+    }
+
+    /**
+     * Returns the layers stacked on top of the main visualization.
+     *
+     * @return the layers, bottom first; must not be modified
+     */
+    public Layer[] getLayers() {
+        return layers;
+    }
+}
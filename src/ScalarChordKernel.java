@@ -0,0 +1,51 @@
+/**
+ * {@link ChordKernel} running plain loops, used when the Vector API is not available.
+ *
+ * @author Adam Abusang
+ */
+final class ScalarChordKernel implements ChordKernel {
+
+    @Override
+    public boolean mapTargets(int whole, int fraction, int numPoints, int first, int count, int[] from, int[] to) {
+        int scale = (int) FixedTtn.SCALE;
+        int target = ChordGeometry.targetOf(whole, fraction, numPoints, first);
+        int remainder = (int) ((long) fraction * first % FixedTtn.SCALE);
+
+        boolean fixedPoint = false;
+        for (int c = 0; c < count; c++) {
+            int i = first + c;
+            from[c] = i;
+            to[c] = target;
+            fixedPoint |= target == i;
+
+            target += whole;
+            remainder += fraction;
+            if (remainder >= scale) {
+                remainder -= scale;
+                target++;
+            }
+            if (target >= numPoints) {
+                target -= numPoints;
+            }
+        }
+        return fixedPoint;
+    }
+
+    @Override
+    public void gatherEndpoints(float[] xs, float[] ys, int[] from, int[] to, int count,
+            float[] x0, float[] y0, float[] x1, float[] y1) {
+        for (int c = 0; c < count; c++) {
+            int a = from[c];
+            int b = to[c];
+            x0[c] = xs[a];
+            y0[c] = ys[a];
+            x1[c] = xs[b];
+            y1[c] = ys[b];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,138 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streams chords to an output stream as an SVG document.
+ * <p>
+ * Every call to {@link #writeChords} becomes a single {@code <path>}. Its data uses the most compact
+ * form SVG allows. Every move is a relative {@code m}, and the lines that follow it are bare
+ * coordinate pairs, implicitly relative {@code l}. Numbers are relative to the previous point, so
+ * they stay short. Separators are left out wherever the next number cannot be mistaken for part of
+ * the previous one, and zeros before the decimal point are dropped.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class SvgWriter extends VectorWriter {
+
+    // The current point of the path data, in tenths
+    private int x, y;
+    // What the path data ends with, to tell whether the next number needs a separator
+    private boolean afterNumber, numberHasDot;
+
+    /**
+     * Writes the start of the document.
+     *
+     * @param out the stream to write to; closed together with the writer
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param background the color the image is filled with, or {@code null} for a transparent background
+     * @throws IOException if writing fails
+     */
+    public SvgWriter(OutputStream out, int width, int height, Color background) throws IOException {
+        super(out);
+        append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        append(width);
+        append("\" height=\"");
+        append(height);
+        append("\" viewBox=\"0 0 ");
+        append(width);
+        append(' ');
+        append(height);
+        append("\">\n");
+        if (background != null) {
+            append("<rect width=\"100%\" height=\"100%\"");
+            appendPaint("fill", background);
+            append("/>\n");
+        }
+    }
+
+    @Override
+    protected void beginPath(Color color, float lineWidth) throws IOException {
+        append("<path fill=\"none\"");
+        appendPaint("stroke", color);
+        append(" stroke-width=\"");
+        appendTenths(Math.round(lineWidth * PRECISION));
+        append("\" d=\"");
+        // A leading m is absolute, so the path starts out relative to the origin
+        x = 0;
+        y = 0;
+        afterNumber = false;
+    }
+
+    @Override
+    protected void moveTo(int x, int y) throws IOException {
+        append('m');
+        afterNumber = false;
+        appendPair(x, y);
+    }
+
+    @Override
+    protected void lineTo(int x, int y) throws IOException {
+        appendPair(x, y);
+    }
+
+    @Override
+    protected void endPath() throws IOException {
+        append("\"/>\n");
+    }
+
+    @Override
+    protected void finish() throws IOException {
+        append("</svg>\n");
+    }
+
+    private void appendPair(int x, int y) throws IOException {
+        // Two numbers of at most 10 digits, a sign, a dot and a separator each
+        reserve(26);
+        appendNumber(x - this.x);
+        appendNumber(y - this.y);
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Writes a number of tenths into the reserved buffer, as short as path data allows.
+     */
+    private void appendNumber(int tenths) {
+        int magnitude = Math.abs(tenths);
+        int whole = magnitude / PRECISION;
+        int fraction = magnitude - whole * PRECISION;
+        boolean startsWithDot = whole == 0 && fraction != 0;
+        // A minus sign always starts a new number, and so does a dot after a number that has one
+        if (afterNumber && tenths >= 0 && !(startsWithDot && numberHasDot)) {
+            buffer[length++] = ' ';
+        }
+        if (tenths < 0) {
+            buffer[length++] = '-';
+        }
+        if (!startsWithDot) {
+            put(whole);
+        }
+        if (fraction != 0) {
+            buffer[length++] = '.';
+            buffer[length++] = (byte) ('0' + fraction);
+        }
+        afterNumber = true;
+        numberHasDot = fraction != 0;
+    }
+
+    private void appendPaint(String attribute, Color color) throws IOException {
+        append(' ');
+        append(attribute);
+        append("=\"#");
+        int rgb = color.getRGB();
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            append(Character.forDigit((rgb >> shift) & 0xf, 16));
+        }
+        append('"');
+        if (color.getAlpha() < 255) {
+            append(' ');
+            append(attribute);
+            append("-opacity=\"");
+            appendTenths(Math.round(color.getAlpha() / 255f * PRECISION));
+            append('"');
+        }
+    }
+}
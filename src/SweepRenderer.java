@@ -0,0 +1,179 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Renders sweeps of times table numbers on several cores.
+ * <p>
+ * Frames are split across a {@link ForkJoinPool}. Every worker thread owns its own
+ * {@link ChordBuffer}, {@link ChordRasterizer} and off-screen image, and turns the rendered image into
+ * a result (for example encoded PNG bytes) with a {@link FrameProcessor}. Results are handed to a
+ * {@link FrameConsumer} on the calling thread strictly in frame order. At most {@code maxInFlight}
+ * results are held at once, which bounds memory no matter how long the sweep is.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class SweepRenderer {
+
+    /**
+     * Converts a freshly rendered frame into a result. Runs on a worker thread; the image is reused
+     * for the next frame of that worker as soon as this returns.
+     *
+     * @param <T> the type of the result
+     */
+    public interface FrameProcessor<T> {
+        T process(int frame, double ttn, BufferedImage image) throws IOException;
+    }
+
+    /**
+     * Receives the results of a sweep on the calling thread, in frame order.
+     *
+     * @param <T> the type of the result
+     */
+    public interface FrameConsumer<T> {
+        void accept(int frame, double ttn, T result) throws IOException;
+    }
+
+    private final ChordGeometry geometry;
+    private final Color color;
+    private final Color background;
+    private final boolean antialias;
+    private final int width, height;
+    private final int threads;
+    private final int maxInFlight;
+    private DensityRenderer.ToneMap toneMap;
+    private double gamma = DensityRenderer.DEFAULT_GAMMA;
+
+    /**
+     * Constructs a sweep renderer.
+     *
+     * @param geometry the circle the chords are drawn on
+     * @param color the color of the chords
+     * @param background the background color, or {@code null} for a transparent background
+     * @param antialias whether the chords are drawn with anti-aliasing
+     * @param width the width of each frame in pixels
+     * @param height the height of each frame in pixels
+     * @param threads the number of worker threads
+     * @param maxInFlight the largest number of frames rendered or waiting to be consumed at once
+     */
+    public SweepRenderer(ChordGeometry geometry, Color color, Color background, boolean antialias,
+            int width, int height, int threads, int maxInFlight) {
+        if (threads < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("threads and maxInFlight must be positive");
+        }
+        this.geometry = geometry;
+        this.color = color;
+        this.background = background;
+        this.antialias = antialias;
+        this.width = width;
+        this.height = height;
+        this.threads = threads;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Switches the sweep to density rendering: every frame is drawn by a single-threaded
+     * {@link DensityRenderer} on its worker instead of being stroked with {@link ChordRasterizer}.
+     *
+     * @param toneMap the curve mapping coverage to opacity, or {@code null} to stroke the chords
+     * @param gamma the gamma of the {@code GAMMA} curve
+     */
+    public void setDensity(DensityRenderer.ToneMap toneMap, double gamma) {
+        this.toneMap = toneMap;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Per-thread rendering state, created lazily on each worker.
+     */
+    private final class Worker {
+        final ChordBuffer chords = new ChordBuffer();
+        final ChordRasterizer rasterizer = toneMap == null ? new ChordRasterizer(background, antialias) : null;
+        final DensityRenderer density = toneMap != null ? new DensityRenderer(width, height, 1) : null;
+        final BufferedImage image = ChordRasterizer.createImage(width, height);
+
+        /**
+         * Draws a frame over the whole image, so nothing of the worker's previous frame is left:
+         * the rasterizer clears the image first, to transparent if there is no background, and the
+         * density renderer writes every pixel, transparent where no chord passes.
+         */
+        void render(double ttn) {
+            geometry.map(ttn, chords);
+            if (density != null) {
+                density.render(chords, color, background, toneMap, gamma, image);
+            } else {
+                rasterizer.render(chords, color, image);
+            }
+        }
+    }
+
+    /**
+     * Renders a sweep.
+     *
+     * @param frames the number of frames
+     * @param ttnOf the times table number of each frame index
+     * @param processor turns each rendered image into a result on the worker thread
+     * @param consumer receives the results in frame order on the calling thread
+     * @param <T> the type of the result
+     * @throws IOException if the processor or the consumer fails
+     * @throws InterruptedException if the calling thread is interrupted while waiting for a frame
+     */
+    public <T> void render(int frames, IntToDoubleFunction ttnOf, FrameProcessor<T> processor,
+            FrameConsumer<T> consumer) throws IOException, InterruptedException {
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ArrayDeque<Future<T>> inFlight = new ArrayDeque<>(maxInFlight);
+
+        try {
+            int next = 0;
+            for (int consumed = 0; consumed < frames; consumed++) {
+                while (next < frames && inFlight.size() < maxInFlight) {
+                    int frame = next++;
+                    double ttn = ttnOf.applyAsDouble(frame);
+                    inFlight.add(pool.submit(() -> {
+                        Worker worker = workers.get();
+                        worker.render(ttn);
+                        try {
+                            return processor.process(frame, ttn, worker.image);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                }
+
+                T result = await(inFlight.poll());
+                consumer.accept(consumed, ttnOf.applyAsDouble(consumed), result);
+            }
+        } finally {
+            for (Future<T> future : inFlight) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
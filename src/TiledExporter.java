@@ -0,0 +1,189 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a single chord diagram at resolutions far beyond the screen, in bounded memory.
+ * <p>
+ * The image is cut into horizontal bands one tile high, and each band into square tiles. The tiles
+ * of a band are rasterized in parallel by {@link ChordRasterizer}, each drawing only the chords that
+ * cross it, and the finished band is streamed row by row into a {@link PngWriter}. Memory use is
+ * one band plus one tile per thread, independent of the height of the image, so a 32k × 32k export
+ * needs a few dozen megabytes.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public class TiledExporter {
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    private final int width, height;
+    private final int tileSize;
+    private final int threads;
+    private final Color background;
+    private final boolean antialias;
+    private final float lineWidth;
+
+    /**
+     * Constructs an exporter.
+     *
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @param tileSize the edge length of a tile in pixels
+     * @param threads the number of threads rasterizing tiles
+     * @param background the background color, or {@code null} for a transparent image
+     * @param antialias whether the chords are drawn with anti-aliasing
+     * @param lineWidth the width of the chords in pixels
+     */
+    public TiledExporter(int width, int height, int tileSize, int threads, Color background,
+            boolean antialias, float lineWidth) {
+        if (width <= 0 || height <= 0 || tileSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Sizes and thread count must be positive");
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.threads = threads;
+        this.background = background;
+        this.antialias = antialias;
+        this.lineWidth = lineWidth;
+    }
+
+    /**
+     * Returns the line width that keeps chords as visible as on screen when the diagram is scaled
+     * up to a given size.
+     *
+     * @param width the width of the export
+     * @param height the height of the export
+     * @return the line width in pixels
+     */
+    public static float scaledLineWidth(int width, int height) {
+        return (float) Math.max(1, Math.min(width / Main.WIDTH, height / Main.HEIGHT));
+    }
+
+    /**
+     * Per-thread tile state.
+     */
+    private final class Tile {
+        final BufferedImage image = ChordRasterizer.createImage(tileSize, tileSize);
+        final int[] pixels = PngChunks.backingPixels(image);
+        final ChordRasterizer rasterizer = new ChordRasterizer(null, antialias, lineWidth);
+        final ChordBuffer chords = new ChordBuffer();
+    }
+
+    /**
+     * Renders chords and writes them as a PNG image.
+     *
+     * @param chords the chords, mapped on a geometry that fits the size of this export
+     * @param color the color of the chords
+     * @param out the stream the PNG is written to; closed when done
+     * @throws IOException if writing fails
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void export(ChordBuffer chords, Color color, OutputStream out) throws IOException, InterruptedException {
+        ChordGeometry geometry = chords.getGeometry();
+        double[] xs = geometry.xs();
+        double[] ys = geometry.ys();
+        double margin = lineWidth + 1;
+
+        ThreadLocal<Tile> tiles = ThreadLocal.withInitial(Tile::new);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        int[] band = new int[width * tileSize];
+        ChordBuffer bandChords = new ChordBuffer();
+        List<Callable<Void>> tasks = new ArrayList<>();
+
+        try (PngWriter png = new PngWriter(out, width, height, background == null)) {
+            for (int bandY = 0; bandY < height; bandY += tileSize) {
+                int bandHeight = Math.min(tileSize, height - bandY);
+
+                // Only chords crossing this band are considered by its tiles
+                bandChords.reset(geometry, chords.getTimesTableNumber(), chords.getCount());
+                double top = bandY - margin;
+                double bottom = bandY + bandHeight + margin;
+                for (int c = 0; c < chords.getCount(); c++) {
+                    int from = chords.getFrom(c);
+                    int to = chords.getTo(c);
+                    if (Math.max(ys[from], ys[to]) >= top && Math.min(ys[from], ys[to]) <= bottom) {
+                        bandChords.append(from, to);
+                    }
+                }
+
+                tasks.clear();
+                for (int tileX = 0; tileX < width; tileX += tileSize) {
+                    int x0 = tileX;
+                    int y0 = bandY;
+                    tasks.add(() -> {
+                        renderTile(tiles.get(), bandChords, xs, color, x0, y0, bandHeight, band);
+                        return null;
+                    });
+                }
+                for (Future<Void> future : pool.invokeAll(tasks)) {
+                    await(future);
+                }
+
+                for (int row = 0; row < bandHeight; row++) {
+                    png.writeRow(band, row * width);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void renderTile(Tile tile, ChordBuffer bandChords, double[] xs, Color color,
+            int x0, int y0, int bandHeight, int[] band) {
+        int tileWidth = Math.min(tileSize, width - x0);
+        double margin = lineWidth + 1;
+        double left = x0 - margin;
+        double right = x0 + tileWidth + margin;
+
+        ChordBuffer chords = tile.chords;
+        chords.reset(bandChords.getGeometry(), bandChords.getTimesTableNumber(), bandChords.getCount());
+        for (int c = 0; c < bandChords.getCount(); c++) {
+            int from = bandChords.getFrom(c);
+            int to = bandChords.getTo(c);
+            if (Math.max(xs[from], xs[to]) >= left && Math.min(xs[from], xs[to]) <= right) {
+                chords.append(from, to);
+            }
+        }
+
+        Graphics2D g = tile.image.createGraphics();
+        try {
+            g.setBackground(background != null ? background : new Color(0, 0, 0, 0));
+            g.clearRect(0, 0, tileSize, tileSize);
+            g.translate(-x0, -y0);
+            tile.rasterizer.draw(chords, color, g);
+        } finally {
+            g.dispose();
+        }
+
+        // Tiles of a band cover disjoint columns, so they can be copied in concurrently
+        for (int row = 0; row < bandHeight; row++) {
+            System.arraycopy(tile.pixels, row * tileSize, band, row * width + x0, tileWidth);
+        }
+    }
+
+    private static void await(Future<Void> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ChordKernel} running on SIMD lanes through the incubating Java Vector API. Needs
+ * {@code --add-modules jdk.incubator.vector}; {@link ChordKernel#get()} only loads it when the module
+ * is present.
+ * <p>
+ * Target indices use the same exact carry scheme as the scalar loop, just on every lane at once:
+ * each lane holds the integer part and the remainder in millionths of {@code ttn * i} for its own
+ * point, and advancing all lanes by one vector length adds {@code ttn * lanes}, carrying overflowing
+ * remainders and wrapping targets past the last point with masked subtractions. Everything stays in
+ * 32-bit integer lanes, so the results are identical to the scalar kernel.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+final class VectorChordKernel implements ChordKernel {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS =
+            VectorSpecies.of(float.class, INTS.vectorShape());
+    private static final ChordKernel SCALAR = new ScalarChordKernel();
+
+    @Override
+    public boolean mapTargets(int whole, int fraction, int numPoints, int first, int count, int[] from, int[] to) {
+        int lanes = INTS.length();
+        int scale = (int) FixedTtn.SCALE;
+
+        if (count < 2 * lanes) {
+            return SCALAR.mapTargets(whole, fraction, numPoints, first, count, from, to);
+        }
+
+        // Lane j starts at point first + j. The starting state is staged in the output arrays, at
+        // positions the loop overwrites anyway
+        for (int j = 0; j < lanes; j++) {
+            from[j] = first + j;
+            to[j] = ChordGeometry.targetOf(whole, fraction, numPoints, first + j);
+            to[lanes + j] = (int) ((long) fraction * (first + j) % FixedTtn.SCALE);
+        }
+        IntVector point = IntVector.fromArray(INTS, from, 0);
+        IntVector target = IntVector.fromArray(INTS, to, 0);
+        IntVector remainder = IntVector.fromArray(INTS, to, lanes);
+
+        // ttn * lanes, split like ttn itself
+        long stepFraction = (long) fraction * lanes;
+        int wholeStep = (int) (((long) whole * lanes + stepFraction / FixedTtn.SCALE) % numPoints);
+        int fractionStep = (int) (stepFraction % FixedTtn.SCALE);
+
+        boolean fixedPoint = false;
+        int bound = INTS.loopBound(count);
+        int c = 0;
+        for (; c < bound; c += lanes) {
+            point.intoArray(from, c);
+            target.intoArray(to, c);
+            if (target.compare(VectorOperators.EQ, point).anyTrue()) {
+                fixedPoint = true;
+            }
+
+            target = target.add(wholeStep);
+            remainder = remainder.add(fractionStep);
+            VectorMask<Integer> carry = remainder.compare(VectorOperators.GE, scale);
+            remainder = remainder.sub(scale, carry);
+            target = target.add(1, carry);
+            target = target.sub(numPoints, target.compare(VectorOperators.GE, numPoints));
+            point = point.add(lanes);
+        }
+        for (; c < count; c++) {
+            int i = first + c;
+            from[c] = i;
+            to[c] = ChordGeometry.targetOf(whole, fraction, numPoints, i);
+            fixedPoint |= to[c] == i;
+        }
+        return fixedPoint;
+    }
+
+    @Override
+    public void gatherEndpoints(float[] xs, float[] ys, int[] from, int[] to, int count,
+            float[] x0, float[] y0, float[] x1, float[] y1) {
+        int lanes = FLOATS.length();
+        int bound = FLOATS.loopBound(count);
+        int c = 0;
+        for (; c < bound; c += lanes) {
+            FloatVector.fromArray(FLOATS, xs, 0, from, c).intoArray(x0, c);
+            FloatVector.fromArray(FLOATS, ys, 0, from, c).intoArray(y0, c);
+            FloatVector.fromArray(FLOATS, xs, 0, to, c).intoArray(x1, c);
+            FloatVector.fromArray(FLOATS, ys, 0, to, c).intoArray(y1, c);
+        }
+        for (; c < count; c++) {
+            x0[c] = xs[from[c]];
+            y0[c] = ys[from[c]];
+            x1[c] = xs[to[c]];
+            y1[c] = ys[to[c]];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + INTS.length() + " lanes)";
+    }
+}
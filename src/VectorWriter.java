@@ -0,0 +1,373 @@
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Streams chords to an output stream as a vector image.
+ * <p>
+ * Nothing is built in memory: path operators are written into a small byte buffer as the chords are
+ * read, and the buffer is flushed whenever it fills up. Coordinates are rounded to tenths of a pixel
+ * and handed to the format as integers, so no floating point number is ever formatted.
+ * </p>
+ * <p>
+ * Chords are written in chains rather than one by one. Chord {@code c} ends at the point where the
+ * chord of point {@code getTo(c)} starts, so following those links turns the chords into polylines
+ * that need one move per chain instead of one per chord. After rounding, a chord that has no length
+ * or repeats the chord just written is left out. Two different chords of a circle are never
+ * collinear, since a line meets a circle in at most two points, so these are the only chords that can
+ * be merged; at high point counts they are a large share of the chords.
+ * </p>
+ *
+ * @author Adam Abusang
+ */
+public abstract class VectorWriter implements AutoCloseable {
+
+    /**
+     * Coordinates are written in units of 1/PRECISION pixels.
+     */
+    protected static final int PRECISION = 10;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private OutputStream target;
+    // Subclasses may write into the buffer directly after reserving room with reserve()
+    protected final byte[] buffer = new byte[BUFFER_SIZE];
+    protected int length;
+    private final byte[] digits = new byte[20];
+
+    // The chord starting at every point of the circle, -1 once written or if there is none
+    private int[] startOf = new int[0];
+
+    // The pen and the last chord written, in rounded units
+    private int penX, penY;
+    private boolean penDown;
+    private int lastX0, lastY0, lastX1, lastY1;
+    private long chordsWritten, chordsMerged;
+
+    /**
+     * Constructs a writer.
+     *
+     * @param out the stream to write to; closed together with the writer
+     */
+    protected VectorWriter(OutputStream out) {
+        this.out = out;
+        this.target = out;
+    }
+
+    /**
+     * Opens a writer chosen by the extension of the file: {@code .svg} for SVG and {@code .pdf} for PDF.
+     *
+     * @param file the file to write
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param background the color the image is filled with, or {@code null} for a transparent background
+     * @return a new writer
+     * @throws IOException if the format is not supported or the file cannot be opened
+     */
+    public static VectorWriter open(File file, int width, int height, Color background) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        String extension = name.substring(name.lastIndexOf('.') + 1);
+        if (!extension.equals("svg") && !extension.equals("pdf")) {
+            throw new IOException("Unsupported vector format: " + file.getName());
+        }
+        OutputStream stream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+        try {
+            return extension.equals("svg") ? new SvgWriter(stream, width, height, background)
+                    : new PdfWriter(stream, width, height, background);
+        } catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends chords as one stroked path.
+     *
+     * @param chords the chords to write
+     * @param color the color of the chords
+     * @param lineWidth the width of the chords in pixels
+     * @throws IOException if writing fails
+     */
+    public void writeChords(ChordBuffer chords, Color color, float lineWidth) throws IOException {
+        chords.gatherEndpoints();
+        int count = chords.getCount();
+        int numPoints = chords.getGeometry() == null ? 0 : chords.getGeometry().getNumPoints();
+        if (startOf.length < numPoints) {
+            startOf = new int[numPoints];
+        }
+        Arrays.fill(startOf, 0, numPoints, -1);
+        for (int c = 0; c < count; c++) {
+            startOf[chords.getFrom(c)] = c;
+        }
+
+        beginPath(color, lineWidth);
+        penDown = false;
+        for (int c = 0; c < count; c++) {
+            // Follow the chain from chord c until it reaches a point with no chord left
+            int chord = c;
+            while (chord >= 0 && startOf[chords.getFrom(chord)] == chord) {
+                startOf[chords.getFrom(chord)] = -1;
+                chord(chords.getX0(chord), chords.getY0(chord), chords.getX1(chord), chords.getY1(chord));
+                chord = startOf[chords.getTo(chord)];
+            }
+        }
+        endPath();
+    }
+
+    /**
+     * Appends the chords of a stack of layers, one stroked path per layer in the layer's color.
+     *
+     * @param layers the mapped layers
+     * @param lineWidth the width of the chords in pixels
+     * @throws IOException if writing fails
+     */
+    public void writeLayers(LayerBatch layers, float lineWidth) throws IOException {
+        int start = 0;
+        for (int l = 0; l < layers.getLayerCount(); l++) {
+            javafx.scene.paint.Color color = layers.getLayers()[l].getColor();
+            beginPath(new Color((float) color.getRed(), (float) color.getGreen(), (float) color.getBlue(),
+                    (float) color.getOpacity()), lineWidth);
+            penDown = false;
+            int end = layers.getLayerEnd(l);
+            for (int c = start; c < end; c++) {
+                chord(layers.getX0(c), layers.getY0(c), layers.getX1(c), layers.getY1(c));
+            }
+            endPath();
+            start = end;
+        }
+    }
+
+    /**
+     * Returns the number of chords written as path segments.
+     *
+     * @return the chord count
+     */
+    public long getChordsWritten() {
+        return chordsWritten;
+    }
+
+    /**
+     * Returns the number of chords left out because, rounded, they had no length or repeated the
+     * chord before them.
+     *
+     * @return the merged chord count
+     */
+    public long getChordsMerged() {
+        return chordsMerged;
+    }
+
+    private void chord(float x0, float y0, float x1, float y1) throws IOException {
+        int ax = Math.round(x0 * PRECISION), ay = Math.round(y0 * PRECISION);
+        int bx = Math.round(x1 * PRECISION), by = Math.round(y1 * PRECISION);
+        if ((ax == bx && ay == by) || isLastChord(ax, ay, bx, by)) {
+            chordsMerged++;
+            return;
+        }
+        if (!penDown || penX != ax || penY != ay) {
+            moveTo(ax, ay);
+        }
+        lineTo(bx, by);
+        penX = bx;
+        penY = by;
+        penDown = true;
+        lastX0 = ax;
+        lastY0 = ay;
+        lastX1 = bx;
+        lastY1 = by;
+        chordsWritten++;
+    }
+
+    private boolean isLastChord(int ax, int ay, int bx, int by) {
+        return penDown && ((ax == lastX0 && ay == lastY0 && bx == lastX1 && by == lastY1)
+                || (ax == lastX1 && ay == lastY1 && bx == lastX0 && by == lastY0));
+    }
+
+    /**
+     * Starts a stroked path.
+     *
+     * @param color the stroke color
+     * @param lineWidth the stroke width in pixels
+     * @throws IOException if writing fails
+     */
+    protected abstract void beginPath(Color color, float lineWidth) throws IOException;
+
+    /**
+     * Starts a new subpath, in units of 1/{@value #PRECISION} pixels.
+     *
+     * @param x the x-coordinate
+     * @param y the y-coordinate
+     * @throws IOException if writing fails
+     */
+    protected abstract void moveTo(int x, int y) throws IOException;
+
+    /**
+     * Adds a line from the current point, in units of 1/{@value #PRECISION} pixels.
+     *
+     * @param x the x-coordinate of the end of the line
+     * @param y the y-coordinate of the end of the line
+     * @throws IOException if writing fails
+     */
+    protected abstract void lineTo(int x, int y) throws IOException;
+
+    /**
+     * Ends the path started by {@link #beginPath}.
+     *
+     * @throws IOException if writing fails
+     */
+    protected abstract void endPath() throws IOException;
+
+    /**
+     * Writes whatever the format needs after the last path. Called once by {@link #close()}.
+     *
+     * @throws IOException if writing fails
+     */
+    protected abstract void finish() throws IOException;
+
+    /**
+     * Finishes the document and closes the stream.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Sends what is buffered to the current target and makes all further output go to another
+     * stream, for formats that compress parts of the document.
+     *
+     * @param stream the stream to write to from now on
+     * @throws IOException if writing fails
+     */
+    protected void redirect(OutputStream stream) throws IOException {
+        flush();
+        target = stream;
+    }
+
+    /**
+     * Sends what is buffered to the current target.
+     *
+     * @throws IOException if writing fails
+     */
+    protected void flush() throws IOException {
+        target.write(buffer, 0, length);
+        length = 0;
+    }
+
+    /**
+     * Makes sure the buffer has room for a number of bytes, flushing it if needed.
+     *
+     * @param bytes the number of bytes about to be written, at most a few hundred
+     * @throws IOException if writing fails
+     */
+    protected void reserve(int bytes) throws IOException {
+        if (length + bytes > buffer.length) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes an integer in decimal into room made with {@link #reserve(int)}.
+     *
+     * @param value the integer
+     */
+    protected void put(int value) {
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        if (value < 10) {
+            buffer[length++] = (byte) ('0' + value);
+            return;
+        }
+        int end = length + digitCount(value);
+        for (int d = end - 1; d >= length; d--) {
+            buffer[d] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length = end;
+    }
+
+    private static int digitCount(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    protected void append(char c) throws IOException {
+        if (length == buffer.length) {
+            flush();
+        }
+        buffer[length++] = (byte) c;
+    }
+
+    /**
+     * Appends ASCII text.
+     *
+     * @param text the text, which must not contain characters outside ASCII
+     * @throws IOException if writing fails
+     */
+    protected void append(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     * Appends an integer in decimal.
+     *
+     * @param value the integer
+     * @throws IOException if writing fails
+     */
+    protected void append(long value) throws IOException {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        if (length + n > buffer.length) {
+            flush();
+        }
+        while (n > 0) {
+            buffer[length++] = digits[--n];
+        }
+    }
+
+    /**
+     * Appends a value given in units of 1/{@value #PRECISION}, as a decimal number without a
+     * trailing {@code .0}.
+     *
+     * @param tenths the value in tenths
+     * @throws IOException if writing fails
+     */
+    protected void appendTenths(int tenths) throws IOException {
+        if (tenths < 0) {
+            append('-');
+            tenths = -tenths;
+        }
+        append(tenths / PRECISION);
+        if (tenths % PRECISION != 0) {
+            append('.');
+            append((char) ('0' + tenths % PRECISION));
+        }
+    }
+}
@@ -1,4 +1,7 @@
 import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Line;
 /**
@@ -19,8 +22,45 @@ import javafx.scene.shape.Line;
 
 public class Visualization {
 
-    private double timesTableNumber;
+    /**
+     * The ways a visualization can be put on screen.
+     * <p>
+     * {@code NODES} builds one {@link Line} per chord inside a {@link Group}, while {@code CANVAS}
+     * strokes every chord straight onto a {@link javafx.scene.canvas.Canvas} in batched paths,
+     * which keeps the scene graph small at high point counts. {@code DENSITY} accumulates the
+     * coverage of the chords with a {@link DensityRenderer} and writes the tone-mapped result into
+     * the canvas, so overlapping chords brighten instead of saturating. {@code MESH} packs every
+     * chord into one {@link ChordMesh} that the graphics card draws in a single call; it needs the 3D
+     * support of a hardware pipeline and is replaced by {@code CANVAS} where there is none.
+     * </p>
+     */
+    public enum RenderMode {
+        NODES, CANVAS, DENSITY, MESH;
+
+        /**
+         * Tells whether the mode can be shown with the current graphics pipeline.
+         *
+         * @return {@code true} if the mode is available
+         */
+        public boolean isSupported() {
+            return this != MESH || ChordMesh.isSupported();
+        }
+    }
+
+    /**
+     * Number of chords stroked per canvas path. Very long paths make the rasterizer slow,
+     * so the chords are flushed in batches of this size.
+     */
+    private static final int CANVAS_BATCH_SIZE = 4096;
+
+    // Fixed point, see FixedTtn: stepping the animation never drifts
+    private long timesTableNumber;
     private final double radius;
+    private RenderMode renderMode = RenderMode.CANVAS;
+
+    // Geometry reused across frames: only the chord mapping changes while the TTN animates
+    private ChordGeometry geometry;
+    private final ChordBuffer chords = new ChordBuffer();
 
     /**
      * Constructs a Visualization object with a specified times table number and circle radius.
@@ -29,7 +69,7 @@ public class Visualization {
      * @param radius The radius of the circle used in the visualization.
      */
     public Visualization(double timesTableNumber, double radius) {
-        this.timesTableNumber = timesTableNumber;
+        this.timesTableNumber = FixedTtn.fromDouble(timesTableNumber);
         this.radius = radius;
     }
 
@@ -39,25 +79,45 @@ public class Visualization {
      * @return The current times table number.
      */
     public double getTimesTableNumber() {
-        return timesTableNumber;
+        return FixedTtn.toDouble(timesTableNumber);
     }
 
     /**
      * Sets the times table number for the visualization.
      *
-     * @param ttn The new times table number.
+     * @param ttn The new times table number, rounded to the nearest millionth.
      */
     public void setTimesTableNum(double ttn) {
-        this.timesTableNumber = ttn;
+        this.timesTableNumber = FixedTtn.fromDouble(ttn);
+    }
+
+    /**
+     * Retrieves the mode used to put the visualization on screen.
+     *
+     * @return The current render mode.
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Sets the mode used to put the visualization on screen. A mode the graphics pipeline does not
+     * support is replaced by {@code CANVAS}.
+     *
+     * @param renderMode The new render mode.
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        this.renderMode = renderMode.isSupported() ? renderMode : RenderMode.CANVAS;
     }
 
     /**
-     * Increments the current times table number by a specified step value.
+     * Increments the current times table number by a specified step value. The step is rounded to
+     * the nearest millionth and added exactly, so any number of steps never drifts.
      *
      * @param stepNum The increment step for the times table number.
      */
     public void incrementTTN(double stepNum) {
-        timesTableNumber += stepNum;
+        timesTableNumber += FixedTtn.fromDouble(stepNum);
     }
 
     /**
@@ -69,25 +129,173 @@ public class Visualization {
      * @return A group containing the lines for the visualization.
      */
     public Group generateLines(double numPoints, Color color) {
-//        incrementRed();
+        return generateLines(mapChords(numPoints), color);
+    }
 
-        Group lines = new Group();
-        PointOnCircle[] points = PointOnCircle.generatePoints(radius, numPoints);
+    /**
+     * Generates a group of lines for chords that were already mapped, for example by a
+     * {@link ChordWorker}.
+     *
+     * @param chords The chords to create lines for.
+     * @param color The color of the lines in the visualization.
+     * @return A group containing the lines for the visualization.
+     */
+    public static Group generateLines(ChordBuffer chords, Color color) {
+        ChordGeometry geometry = chords.getGeometry();
 
-        for (PointOnCircle poc: points) {
-            double correspondingPointID = (getTimesTableNumber() * poc.getID()) % numPoints;
-            PointOnCircle pointTo = points[(int) correspondingPointID];
-            PointOnCircle pointFrom = points[poc.getID()];
+        Line[] lines = new Line[chords.getCount()];
+        for (int c = 0; c < lines.length; c++) {
+            int from = chords.getFrom(c);
+            int to = chords.getTo(c);
 
-            Line line = new Line(pointFrom.getX(), pointFrom.getY(), pointTo.getX(), pointTo.getY());
+            Line line = new Line(geometry.getX(from), geometry.getY(from), geometry.getX(to), geometry.getY(to));
             line.setStroke(color);
-            lines.getChildren().add(line);
+            lines[c] = line;
         }
 
-        return lines;
+        return new Group(lines);
     }
 
+    /**
+     * Draws the visualization directly onto a canvas, replacing whatever was drawn before.
+     * The chords are stroked in batched paths instead of being created as scene-graph nodes.
+     *
+     * @param gc The graphics context of the canvas to draw on.
+     * @param numPoints The number of points on the circle's circumference.
+     * @param color The color of the lines in the visualization.
+     */
+    public void drawLines(GraphicsContext gc, double numPoints, Color color) {
+        drawLines(gc, mapChords(numPoints), color);
+    }
 
+    /**
+     * Changes the color of lines previously created by {@link #generateLines(double, Color)}.
+     *
+     * @param lines The group returned by {@code generateLines}.
+     * @param color The new color of the lines.
+     */
+    public static void restyleLines(Group lines, Color color) {
+        for (Node node : lines.getChildren()) {
+            ((Line) node).setStroke(color);
+        }
+    }
 
+    /**
+     * Draws chords that were already mapped onto a canvas, replacing whatever was drawn before.
+     *
+     * @param gc The graphics context of the canvas to draw on.
+     * @param chords The chords to draw.
+     * @param color The color of the lines in the visualization.
+     */
+    public static void drawLines(GraphicsContext gc, ChordBuffer chords, Color color) {
+        clear(gc);
+        gc.setStroke(color);
+        gc.setLineWidth(1);
+        chords.gatherEndpoints();
+
+        gc.beginPath();
+        int batched = 0;
+        for (int c = 0; c < chords.getCount(); c++) {
+            gc.moveTo(chords.getX0(c), chords.getY0(c));
+            gc.lineTo(chords.getX1(c), chords.getY1(c));
+
+            if (++batched == CANVAS_BATCH_SIZE) {
+                gc.stroke();
+                gc.beginPath();
+                batched = 0;
+            }
+        }
+        gc.stroke();
+    }
+
+    /**
+     * Draws a stack of layers onto a canvas, on top of whatever was drawn before. All layers are
+     * stroked in one pass over their shared endpoint list; a new path is only started when the color
+     * changes or a batch is full.
+     *
+     * @param gc The graphics context of the canvas to draw on.
+     * @param layers The mapped layers, or {@code null} if there are none.
+     */
+    public static void drawLayers(GraphicsContext gc, LayerBatch layers) {
+        if (layers == null || layers.getCount() == 0) {
+            return;
+        }
+        gc.setLineWidth(1);
+
+        Color stroke = null;
+        gc.beginPath();
+        int batched = 0;
+        int c = 0;
+        for (int l = 0; l < layers.getLayerCount(); l++) {
+            Color color = layers.getLayers()[l].getColor();
+            if (!color.equals(stroke)) {
+                if (batched > 0) {
+                    gc.stroke();
+                    gc.beginPath();
+                    batched = 0;
+                }
+                gc.setStroke(color);
+                stroke = color;
+            }
+
+            for (int end = layers.getLayerEnd(l); c < end; c++) {
+                gc.moveTo(layers.getX0(c), layers.getY0(c));
+                gc.lineTo(layers.getX1(c), layers.getY1(c));
+
+                if (++batched == CANVAS_BATCH_SIZE) {
+                    gc.stroke();
+                    gc.beginPath();
+                    batched = 0;
+                }
+            }
+        }
+        gc.stroke();
+    }
+
+    /**
+     * Maps the chords for the current times table number, reusing the cached circle geometry
+     * as long as the number of points stays the same.
+     *
+     * @param numPoints The number of points on the circle's circumference.
+     * @return The chords of the current frame.
+     */
+    private ChordBuffer mapChords(double numPoints) {
+        return getGeometry(numPoints).mapFixed(timesTableNumber, chords);
+    }
+
+    /**
+     * Returns the circle geometry for a number of points, reusing the cached geometry as long as
+     * the number of points stays the same.
+     *
+     * @param numPoints The number of points on the circle's circumference.
+     * @return The geometry of the circle.
+     */
+    public ChordGeometry getGeometry(double numPoints) {
+        if (geometry == null || geometry.getNumPoints() != (int) numPoints) {
+            geometry = ChordGeometry.forCircle(radius, (int) numPoints);
+        }
+        return geometry;
+    }
 
+    /**
+     * Writes an image into a canvas, replacing whatever was drawn before. Used for tone-mapped density
+     * images from a {@link DensityRenderer} and for frames recalled from a {@link FrameCache}.
+     *
+     * @param gc The graphics context of the canvas to draw on.
+     * @param argb The image as packed ARGB pixels, row by row.
+     * @param width The width of the image in pixels.
+     * @param height The height of the image in pixels.
+     */
+    public static void drawPixels(GraphicsContext gc, int[] argb, int width, int height) {
+        gc.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+    }
+
+    /**
+     * Clears everything previously drawn on a canvas.
+     *
+     * @param gc The graphics context of the canvas to clear.
+     */
+    public static void clear(GraphicsContext gc) {
+        gc.clearRect(0, 0, gc.getCanvas().getWidth(), gc.getCanvas().getHeight());
+    }
 }